@@ -4,6 +4,7 @@ plugins {
     java
     application
     id("net.ltgt.errorprone") version "0.8.1"
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 java {
@@ -37,6 +38,10 @@ dependencies {
     testRuntime("org.junit.jupiter:junit-jupiter-engine:5.4.0")
 }
 
+jmh {
+    jmhVersion = "1.22"
+}
+
 val run by tasks.getting(JavaExec::class) {
     standardInput = System.`in`
 }
@@ -66,4 +71,10 @@ tasks.withType<JavaCompile> {
 // Error prone options
 tasks.named<JavaCompile>("compileTestJava") {
     options.errorprone.isEnabled.set(false)
+}
+
+// Benchmarks and code generated by JMH are not checked
+tasks.withType<JavaCompile>().matching { it.name.contains("jmh", ignoreCase = true) }.configureEach {
+    options.compilerArgs.remove("-Werror")
+    options.errorprone.isEnabled.set(false)
 }
\ No newline at end of file
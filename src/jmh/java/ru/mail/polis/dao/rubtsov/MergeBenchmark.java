@@ -0,0 +1,106 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.collect.Iterators;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.mail.polis.dao.Iters;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of memtables with overlapping keys into the newest live versions, as range scans and compaction do.
+ * Loser tree over table cursors is compared with merge of iterators by a priority queue,
+ * collapsing of equal keys and filtering of tombstones.
+ * Time is per source record, so results for different numbers of sources are comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+    private static final int RECORDS = 64 * 1024;
+    private static final int KEY_SPACE = RECORDS / 2;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    @Param({"2", "8", "64"})
+    public int sources;
+
+    private final List<MemTable> tables = new ArrayList<>();
+
+    /**
+     * Spreads records over tables, every key has two versions on average and some versions are tombstones.
+     */
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < sources; i++) {
+            tables.add(new MemTable(i));
+        }
+        final ByteBuffer value = ByteBuffer.allocate(64);
+        for (int i = 0; i < RECORDS; i++) {
+            final ByteBuffer key = ByteBuffer.allocate(Integer.BYTES).putInt(0, random.nextInt(KEY_SPACE));
+            final MemTable table = tables.get(random.nextInt(sources));
+            if (random.nextInt(10) == 0) {
+                table.remove(key);
+            } else {
+                table.upsert(key, value);
+            }
+        }
+    }
+
+    /**
+     * Merges table cursors with a loser tree.
+     *
+     * @param blackhole consumer of items
+     */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void cursors(final Blackhole blackhole) {
+        final List<TableCursor> cursors = new ArrayList<>(sources);
+        for (final MemTable table : tables) {
+            cursors.add(table.cursor(EMPTY));
+        }
+        final Iterator<Item> items = TableCursors.items(TableCursors.merge(cursors, false));
+        while (items.hasNext()) {
+            blackhole.consume(items.next());
+        }
+    }
+
+    /**
+     * Merges table iterators as it was done before cursors.
+     *
+     * @param blackhole consumer of items
+     */
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void iterators(final Blackhole blackhole) {
+        final List<Iterator<Item>> iterators = new ArrayList<>(sources);
+        for (final MemTable table : tables) {
+            iterators.add(table.iterator(EMPTY));
+        }
+        final Iterator<Item> items = Iterators.filter(
+                Iters.collapseEquals(Iterators.mergeSorted(iterators, Item.COMPARATOR), Item::getKey),
+                i -> !i.isRemoved());
+        while (items.hasNext()) {
+            blackhole.consume(items.next());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Point reads of a 16 MB table which is mapped or read by positional reads into {@link BlockCache}.
+ * Warm reads go to a table opened once with all blocks already touched. Cold reads open the table anew
+ * for every batch, so neither the mapping nor the block cache has anything of it yet.
+ * Page cache of the kernel stays warm in both cases, dropping it needs privileges a benchmark doesn't have.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class ReadModeBenchmark {
+    private static final int TABLE_SIZE = 16 * 1024 * 1024;
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 256;
+    private static final int BATCH = 1000;
+    private static final long CACHE_SIZE = 2L * TABLE_SIZE;
+
+    @Param({"MMAP", "PREAD"})
+    public DAOConfig.ReadMode readMode;
+
+    private File dir;
+    private File tableFile;
+    private final List<ByteBuffer> keys = new ArrayList<>();
+    private SSTable warmTable;
+
+    /**
+     * Writes the table and warms up a table instance.
+     *
+     * @throws IOException if table can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("read-bench").toFile();
+        final Random random = new Random(42);
+        final MemTable memTable = new MemTable(0);
+        while (memTable.sizeInBytes() < TABLE_SIZE) {
+            final byte[] key = new byte[KEY_SIZE];
+            final byte[] value = new byte[VALUE_SIZE];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            memTable.upsert(ByteBuffer.wrap(key), ByteBuffer.wrap(value));
+            keys.add(ByteBuffer.wrap(key));
+        }
+        final Path path = SSTable.writeNewTable(memTable.latestIterator(ByteBuffer.allocate(0)), dir,
+                "table", DAOConfig.defaults());
+        tableFile = path.toFile();
+        warmTable = new SSTable(tableFile, new BlockCache(CACHE_SIZE), readMode);
+        for (final ByteBuffer key : keys) {
+            warmTable.getLatest(key);
+        }
+    }
+
+    /**
+     * Removes the table.
+     *
+     * @throws IOException if files can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        warmTable.release();
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private ByteBuffer randomKey() {
+        return keys.get(ThreadLocalRandom.current().nextInt(keys.size()));
+    }
+
+    /**
+     * Reads a key from the warm table.
+     *
+     * @return item read
+     */
+    @Benchmark
+    public Item warm() {
+        return warmTable.getLatest(randomKey());
+    }
+
+    /**
+     * Reads a batch of keys from a table just opened.
+     *
+     * @param cold      table just opened
+     * @param blackhole consumer of items
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void cold(final ColdTable cold, final Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(cold.table.getLatest(randomKey()));
+        }
+    }
+
+    /**
+     * Table opened with an empty cache before every batch of cold reads.
+     */
+    @State(Scope.Thread)
+    public static class ColdTable {
+        SSTable table;
+
+        /**
+         * Opens the table.
+         *
+         * @param benchmark benchmark with the table file
+         * @throws IOException if table can't be read
+         */
+        @Setup(Level.Invocation)
+        public void open(final ReadModeBenchmark benchmark) throws IOException {
+            table = new SSTable(benchmark.tableFile, new BlockCache(CACHE_SIZE), benchmark.readMode);
+        }
+
+        @TearDown(Level.Invocation)
+        public void release() {
+            table.release();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of writing SSTables: flush of a 4 MB {@link MemTable} and compaction of 10 tables.
+ * {@link Bytes#bytes} counter reports written bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class SSTableWriterBenchmark {
+    private static final int MEM_TABLE_SIZE = 4 * 1024 * 1024;
+    private static final int TABLES_TO_COMPACT = 10;
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 256;
+
+    private final DAOConfig config = DAOConfig.defaults();
+    private File dir;
+    private MemTable memTable;
+    private List<SSTable> tables;
+
+    /**
+     * Amount of written bytes.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    /**
+     * Fills a memtable and writes tables to compact.
+     *
+     * @throws IOException if tables can't be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("writer-bench").toFile();
+        final Random random = new Random(42);
+        memTable = fill(random, 0);
+        tables = new ArrayList<>();
+        for (int i = 0; i < TABLES_TO_COMPACT; i++) {
+            final MemTable table = fill(random, i + 1);
+            final Path path = SSTable.writeNewTable(table.latestIterator(ByteBuffer.allocate(0)), dir,
+                    "input-" + i, config);
+            tables.add(new SSTable(path.toFile(), new BlockCache(0)));
+        }
+    }
+
+    private static MemTable fill(final Random random, final long generation) {
+        final MemTable table = new MemTable(generation);
+        while (table.sizeInBytes() < MEM_TABLE_SIZE) {
+            final byte[] key = new byte[KEY_SIZE];
+            final byte[] value = new byte[VALUE_SIZE];
+            random.nextBytes(key);
+            random.nextBytes(value);
+            table.upsert(ByteBuffer.wrap(key), ByteBuffer.wrap(value));
+        }
+        return table;
+    }
+
+    /**
+     * Removes written tables.
+     *
+     * @throws IOException if files can't be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Writes the memtable as a new table.
+     *
+     * @param bytes written bytes counter
+     * @throws IOException if table can't be written
+     */
+    @Benchmark
+    public void flush(final Bytes bytes) throws IOException {
+        final Path path = SSTable.writeNewTable(memTable.latestIterator(ByteBuffer.allocate(0)), dir,
+                "flush", config);
+        bytes.bytes += Files.size(path);
+    }
+
+    /**
+     * Merges all input tables into a new table.
+     *
+     * @param bytes written bytes counter
+     * @throws IOException if table can't be written
+     */
+    @Benchmark
+    public void compact(final Bytes bytes) throws IOException {
+        final List<TableCursor> cursors = new ArrayList<>();
+        for (final SSTable table : tables) {
+            cursors.add(table.cursor(ByteBuffer.allocate(0)));
+        }
+        final Path path = SSTable.writeNewTable(TableCursors.items(TableCursors.merge(cursors, false)), dir,
+                "compact", config);
+        bytes.bytes += Files.size(path);
+    }
+}
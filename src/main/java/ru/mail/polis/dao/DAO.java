@@ -47,6 +47,14 @@ public interface DAO extends Closeable {
     @NotNull
     Iterator<Item> latestIterator(@NotNull ByteBuffer from) throws IOException;
 
+    /**
+     * Obtains the newest {@link Item} with exactly given key, tombstones included.
+     *
+     * @return item or {@code null} if there is no such key
+     */
+    @Nullable
+    Item getLatest(@NotNull ByteBuffer key) throws IOException;
+
     /**
      * Provides iterator (possibly empty) over {@link Record}s starting at "from" key (inclusive)
      * until given "to" key (exclusive) in <b>ascending</b> order according to {@link Record#compareTo(Record)}.
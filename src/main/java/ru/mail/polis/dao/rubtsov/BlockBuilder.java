@@ -0,0 +1,123 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Builds prefix compressed data blocks.
+ * Each record stores only the part of its key not shared with the previous key:
+ * [shared size][unshared size][unshared key part][timestamp] (if value exists [value size][value]),
+ * sizes are varints. Every {@code restartInterval} records the whole key is stored,
+ * offsets of such restart points are written at the end of block as [offsets][offsets number],
+ * so readers can binary search them.
+ */
+final class BlockBuilder {
+    private final int restartInterval;
+    private ByteBuffer buffer;
+    private int[] restarts = new int[16];
+    private int restartsCount;
+    private int sinceRestart;
+    private byte[] lastKey = new byte[64];
+    private int lastKeySize;
+
+    BlockBuilder(final int blockSize, final int restartInterval) {
+        this.buffer = ByteBuffer.allocate(blockSize);
+        this.restartInterval = restartInterval;
+    }
+
+    boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    /**
+     * Returns size of the finished block if given item is added to it.
+     *
+     * @param item item to add
+     * @return block size in bytes
+     */
+    int sizeWith(final Item item) {
+        final boolean restart = sinceRestart == 0 || sinceRestart == restartInterval;
+        return buffer.position() + recordSize(item, restart)
+                + Integer.BYTES * (restartsCount + (restart ? 2 : 1));
+    }
+
+    private int recordSize(final Item item, final boolean restart) {
+        final ByteBuffer key = item.getKey();
+        final int shared = restart ? 0 : Keys.commonPrefix(lastKey, lastKeySize, key);
+        final int unshared = key.remaining() - shared;
+        int size = VarInts.size(shared) + VarInts.size(unshared) + unshared + Long.BYTES;
+        if (!item.isRemoved()) {
+            final int valueSize = item.getValue().remaining();
+            size += VarInts.size(valueSize) + valueSize;
+        }
+        return size;
+    }
+
+    void add(final Item item) {
+        final boolean restart = sinceRestart == 0 || sinceRestart == restartInterval;
+        final int size = recordSize(item, restart) + Integer.BYTES * (restartsCount + 2);
+        if (buffer.remaining() < size) {
+            buffer = ByteBuffer.allocate(buffer.position() + size).put(buffer.flip());
+        }
+        if (restart) {
+            if (restarts.length == restartsCount) {
+                restarts = Arrays.copyOf(restarts, restartsCount * 2);
+            }
+            restarts[restartsCount++] = buffer.position();
+            sinceRestart = 0;
+        }
+        final ByteBuffer key = item.getKey();
+        final int shared = restart ? 0 : Keys.commonPrefix(lastKey, lastKeySize, key);
+        final int unshared = key.remaining() - shared;
+        VarInts.put(buffer, shared);
+        VarInts.put(buffer, unshared);
+        buffer.put(key.duplicate().position(key.position() + shared));
+        buffer.putLong(item.getTimeStamp());
+        if (!item.isRemoved()) {
+            final ByteBuffer value = item.getValue();
+            VarInts.put(buffer, value.remaining());
+            buffer.put(value.duplicate());
+        }
+        if (lastKey.length < key.remaining()) {
+            lastKey = new byte[Math.max(key.remaining(), lastKey.length * 2)];
+        }
+        key.duplicate().get(lastKey, 0, key.remaining());
+        lastKeySize = key.remaining();
+        sinceRestart++;
+    }
+
+    /**
+     * Appends restart points to the block.
+     *
+     * @return buffer ready to be written
+     */
+    ByteBuffer finish() {
+        for (int i = 0; i < restartsCount; i++) {
+            buffer.putInt(restarts[i]);
+        }
+        buffer.putInt(restartsCount);
+        return buffer.flip();
+    }
+
+    /**
+     * Prepares builder for the next block, previous key is kept to build separators.
+     */
+    void reset() {
+        buffer.clear();
+        restartsCount = 0;
+        sinceRestart = 0;
+    }
+
+    /**
+     * Returns the shortest prefix of the key which is still greater than the last added key.
+     *
+     * @param key key greater than the last added one
+     * @return separator
+     */
+    byte[] separator(final ByteBuffer key) {
+        final int prefix = Keys.commonPrefix(lastKey, lastKeySize, key);
+        final byte[] separator = new byte[Math.min(prefix + 1, key.remaining())];
+        key.duplicate().get(separator);
+        return separator;
+    }
+}
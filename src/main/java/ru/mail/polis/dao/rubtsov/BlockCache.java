@@ -0,0 +1,164 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * LRU cache of decompressed SSTable blocks and of blocks read on demand, shared by all tables of storage.
+ * Blocks are identified by table unique ID and block offset, the cache is bounded by total size of blocks.
+ * Blocks are spread over segments with locks of their own, capacity may be changed at runtime,
+ * see {@link MemoryBudget}.
+ */
+public final class BlockCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile long capacityInBytes;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacityInBytes maximum total size of cached blocks
+     */
+    BlockCache(final long capacityInBytes) {
+        this.capacityInBytes = capacityInBytes;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns cached block or loads and caches it, block is loaded without holding locks.
+     *
+     * @param tableID     unique ID of table
+     * @param blockOffset offset of block in table
+     * @param loader      supplier of block contents
+     * @return read only block
+     */
+    @NotNull
+    ByteBuffer get(@NotNull final String tableID,
+                   final long blockOffset,
+                   @NotNull final Supplier<ByteBuffer> loader) {
+        final BlockKey key = new BlockKey(tableID, blockOffset);
+        final Segment segment = segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+        ByteBuffer block = segment.get(key);
+        if (block == null) {
+            misses.increment();
+            block = loader.get();
+            segment.put(key, block, capacityInBytes / SEGMENTS);
+        } else {
+            hits.increment();
+        }
+        return block.duplicate();
+    }
+
+    /**
+     * Changes capacity, least recently used blocks are evicted if the cache doesn't fit it.
+     *
+     * @param capacityInBytes maximum total size of cached blocks
+     */
+    void setCapacity(final long capacityInBytes) {
+        Preconditions.checkArgument(capacityInBytes >= 0, "Capacity should not be negative");
+        this.capacityInBytes = capacityInBytes;
+        for (final Segment segment : segments) {
+            segment.trim(capacityInBytes / SEGMENTS);
+        }
+    }
+
+    public long capacityInBytes() {
+        return capacityInBytes;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns total size of blocks currently cached.
+     *
+     * @return size in bytes
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            size += segment.sizeInBytes();
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        private final Map<BlockKey, ByteBuffer> blocks = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeInBytes;
+
+        @Nullable
+        synchronized ByteBuffer get(final BlockKey key) {
+            return blocks.get(key);
+        }
+
+        synchronized void put(final BlockKey key, final ByteBuffer block, final long capacity) {
+            if (block.capacity() > capacity) {
+                return;
+            }
+            final ByteBuffer previous = blocks.put(key, block);
+            if (previous != null) {
+                sizeInBytes -= previous.capacity();
+            }
+            sizeInBytes += block.capacity();
+            trim(capacity);
+        }
+
+        synchronized void trim(final long capacity) {
+            final Iterator<ByteBuffer> eldest = blocks.values().iterator();
+            while (sizeInBytes > capacity && eldest.hasNext()) {
+                sizeInBytes -= eldest.next().capacity();
+                eldest.remove();
+            }
+        }
+
+        synchronized long sizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+
+    private static final class BlockKey {
+        private final String tableID;
+        private final long blockOffset;
+
+        BlockKey(final String tableID, final long blockOffset) {
+            this.tableID = tableID;
+            this.blockOffset = blockOffset;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) o;
+            return blockOffset == other.blockOffset && tableID.equals(other.tableID);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableID, blockOffset);
+        }
+    }
+}
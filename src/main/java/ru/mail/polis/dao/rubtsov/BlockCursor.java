@@ -0,0 +1,51 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sequential reader of records inside a single data block.
+ * Cursor is positioned at the first record of the block right after creation.
+ */
+interface BlockCursor {
+    /**
+     * Check whether cursor points to a record.
+     */
+    boolean isValid();
+
+    /**
+     * Move to the next record of the block.
+     */
+    void next();
+
+    /**
+     * Move to the first record of the block which key is greater than or equal to given one.
+     */
+    void seek(@NotNull ByteBuffer key);
+
+    /**
+     * Compare key of current record with given one.
+     */
+    int compareKey(@NotNull ByteBuffer key);
+
+    /**
+     * Get key of current record as a view reused by the cursor.
+     */
+    ByteBuffer key();
+
+    /**
+     * Get timestamp of current record, negative for tombstones.
+     */
+    long timeStamp();
+
+    /**
+     * Get size of value of current record, zero for tombstones.
+     */
+    int valueSize();
+
+    /**
+     * Materialize current record.
+     */
+    Item item();
+}
@@ -0,0 +1,125 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sparse index of block based SSTable kept in heap.
+ * Stores a separator key and the offset of each data block.
+ * Separator is not greater than the first key of its block and greater than any key of previous blocks,
+ * the first block has an empty one.
+ * On disk every entry is [key size][key][block offset].
+ */
+final class BlockIndex {
+    private final byte[] keys;
+    private final int[] keyOffsets;
+    private final long[] blockOffsets;
+
+    private BlockIndex(final byte[] keys, final int[] keyOffsets, final long[] blockOffsets) {
+        this.keys = keys;
+        this.keyOffsets = keyOffsets;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Loads index into heap.
+     *
+     * @param index   serialized index
+     * @param dataEnd position where data blocks end
+     * @return index
+     * @throws IllegalArgumentException if index is corrupted
+     */
+    static BlockIndex read(final ByteBuffer index, final long dataEnd) {
+        final ByteBuffer entries = index.duplicate();
+        int blocks = 0;
+        int keysSize = 0;
+        while (entries.hasRemaining()) {
+            final int keySize = entries.getInt();
+            Preconditions.checkArgument(keySize >= 0 && keySize <= entries.remaining() - Long.BYTES);
+            entries.position(entries.position() + keySize + Long.BYTES);
+            keysSize += keySize;
+            blocks++;
+        }
+        final byte[] keys = new byte[keysSize];
+        final int[] keyOffsets = new int[blocks + 1];
+        final long[] blockOffsets = new long[blocks + 1];
+        entries.rewind();
+        for (int i = 0; i < blocks; i++) {
+            final int keySize = entries.getInt();
+            entries.get(keys, keyOffsets[i], keySize);
+            keyOffsets[i + 1] = keyOffsets[i] + keySize;
+            blockOffsets[i] = entries.getLong();
+            Preconditions.checkArgument(i == 0 || blockOffsets[i] > blockOffsets[i - 1]);
+        }
+        blockOffsets[blocks] = dataEnd;
+        return new BlockIndex(keys, keyOffsets, blockOffsets);
+    }
+
+    int size() {
+        return blockOffsets.length - 1;
+    }
+
+    long blockStart(final int block) {
+        return blockOffsets[block];
+    }
+
+    long blockEnd(final int block) {
+        return blockOffsets[block + 1];
+    }
+
+    /**
+     * Returns separator of given block, it is not greater than the first key of the block.
+     *
+     * @param block block number
+     * @return read only key
+     */
+    ByteBuffer separator(final int block) {
+        final int offset = keyOffsets[block];
+        return ByteBuffer.wrap(keys, offset, keyOffsets[block + 1] - offset).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns contents of given block as stored on disk.
+     *
+     * @param file  mapped table file
+     * @param block block number
+     * @return block region
+     */
+    ByteBuffer region(@NotNull final MappedFile file, final int block) {
+        return file.region(blockStart(block), blockEnd(block));
+    }
+
+    /**
+     * Finds the last block which separator is less than or equal to given key.
+     *
+     * @param key key to look for
+     * @return block number or -1 if table is empty
+     */
+    int floorBlock(@NotNull final ByteBuffer key) {
+        int left = 0;
+        int right = size() - 1;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            final int compare = compareSeparator(mid, key);
+            if (compare > 0) {
+                right = mid - 1;
+            } else if (compare < 0) {
+                left = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return right;
+    }
+
+    private int compareSeparator(final int block, final ByteBuffer key) {
+        final int offset = keyOffsets[block];
+        return Keys.compare(keys, offset, keyOffsets[block + 1] - offset, key);
+    }
+
+    long sizeInBytes() {
+        return keys.length + (long) keyOffsets.length * Integer.BYTES + (long) blockOffsets.length * Long.BYTES;
+    }
+}
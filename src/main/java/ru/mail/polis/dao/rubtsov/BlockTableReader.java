@@ -0,0 +1,131 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Reader of block based tables.
+ * Lookup binary searches resident {@link BlockIndex} and then scans a single block with a {@link BlockCursor}.
+ * Blocks are obtained from a source which may decompress and cache them.
+ */
+final class BlockTableReader implements TableReader {
+    private final BlockIndex index;
+    private final IntFunction<ByteBuffer> blocks;
+    private final boolean prefixCompressed;
+
+    /**
+     * Creates reader over data blocks of a table.
+     *
+     * @param index            index of the blocks
+     * @param blocks           source of block contents by block number
+     * @param prefixCompressed whether keys in blocks are prefix compressed, see {@link BlockBuilder}
+     */
+    BlockTableReader(final BlockIndex index,
+                     final IntFunction<ByteBuffer> blocks,
+                     final boolean prefixCompressed) {
+        this.index = index;
+        this.blocks = blocks;
+        this.prefixCompressed = prefixCompressed;
+    }
+
+    private BlockCursor blockCursor(final int block) {
+        final ByteBuffer blockData = blocks.apply(block);
+        return prefixCompressed ? new PrefixBlockCursor(blockData) : new PlainBlockCursor(blockData);
+    }
+
+    @Nullable
+    @Override
+    public Item get(@NotNull final ByteBuffer key) {
+        final int block = index.floorBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        final BlockCursor cursor = blockCursor(block);
+        cursor.seek(key);
+        if (cursor.isValid() && cursor.compareKey(key) == 0) {
+            return cursor.item();
+        }
+        return null;
+    }
+
+    @Override
+    public List<ByteBuffer> sampleKeys(final int amount) {
+        final int step = Math.max(1, index.size() / amount);
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int block = 0; block < index.size(); block += step) {
+            keys.add(index.separator(block));
+        }
+        return keys;
+    }
+
+    @Override
+    public Iterator<Item> iterator(@NotNull final ByteBuffer from) {
+        return TableCursors.items(cursor(from));
+    }
+
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return new Cursor(from);
+    }
+
+    /**
+     * Cursor moving over blocks, a block cursor is created per block rather than per record.
+     */
+    private final class Cursor implements TableCursor {
+        private int block;
+        private BlockCursor cursor;
+
+        Cursor(final ByteBuffer from) {
+            block = Math.max(0, index.floorBlock(from));
+            if (block < index.size()) {
+                cursor = blockCursor(block);
+                cursor.seek(from);
+                skipEmptyBlocks();
+            }
+        }
+
+        private void skipEmptyBlocks() {
+            while (cursor != null && !cursor.isValid()) {
+                block++;
+                cursor = block < index.size() ? blockCursor(block) : null;
+            }
+        }
+
+        @Override
+        public boolean isValid() {
+            return cursor != null;
+        }
+
+        @Override
+        public void next() {
+            cursor.next();
+            skipEmptyBlocks();
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return cursor.key();
+        }
+
+        @Override
+        public long timeStamp() {
+            return cursor.timeStamp();
+        }
+
+        @Override
+        public int valueSize() {
+            return cursor.valueSize();
+        }
+
+        @Override
+        public Item item() {
+            return cursor.item();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bloom filter over keys of a single SSTable.
+ * Uses one 64-bit murmur3 hash per key split into two halves for double hashing,
+ * so writer can collect hashes first and size the filter when the number of keys is known.
+ */
+final class BloomFilter {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final double LN2 = Math.log(2);
+
+    private final long[] words;
+    private final int hashCount;
+    private final long bitsCount;
+
+    private BloomFilter(final long[] words, final int hashCount) {
+        this.words = words;
+        this.hashCount = hashCount;
+        this.bitsCount = (long) words.length * Long.SIZE;
+    }
+
+    /**
+     * Creates an empty filter sized for given amount of keys and false positive rate.
+     *
+     * @param expectedKeys      expected number of keys
+     * @param falsePositiveRate desired false positive probability
+     * @return empty filter
+     */
+    static BloomFilter create(final long expectedKeys, final double falsePositiveRate) {
+        Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1,
+                "False positive rate should be in (0, 1)");
+        final long keys = Math.max(1, expectedKeys);
+        final long bits = Math.min(Integer.MAX_VALUE,
+                Math.max(Long.SIZE, (long) (-keys * Math.log(falsePositiveRate) / (LN2 * LN2))));
+        final int wordsCount = Math.toIntExact((bits + Long.SIZE - 1) / Long.SIZE);
+        final int hashCount = Math.max(1, (int) Math.round((double) bits / keys * LN2));
+        return new BloomFilter(new long[wordsCount], hashCount);
+    }
+
+    /**
+     * Reads filter previously written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @param buffer    buffer positioned at the first word of filter
+     * @param hashCount number of hash functions
+     * @return filter
+     */
+    static BloomFilter read(final ByteBuffer buffer, final int hashCount) {
+        Preconditions.checkArgument(buffer.remaining() % Long.BYTES == 0 && buffer.hasRemaining());
+        final long[] words = new long[buffer.remaining() / Long.BYTES];
+        buffer.duplicate().asLongBuffer().get(words);
+        return new BloomFilter(words, hashCount);
+    }
+
+    static long hash(final ByteBuffer key) {
+        return HASH_FUNCTION.hashBytes(key.duplicate()).asLong();
+    }
+
+    void put(final long hash) {
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            final long bit = index(hash1, hash2, i);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(final ByteBuffer key) {
+        final long hash = hash(key);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            final long bit = index(hash1, hash2, i);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(final int hash1, final int hash2, final int i) {
+        int combinedHash = hash1 + i * hash2;
+        if (combinedHash < 0) {
+            combinedHash = ~combinedHash;
+        }
+        return combinedHash % bitsCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    void writeTo(final TableOutput output) throws IOException {
+        for (final long word : words) {
+            output.writeLong(word);
+        }
+    }
+}
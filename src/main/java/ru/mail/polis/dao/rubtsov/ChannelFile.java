@@ -0,0 +1,104 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Table file read by positional reads of an open channel, which are safe for concurrent readers.
+ * Unlike {@link MappedFile}, nothing of the file stays in memory of the process except what callers keep,
+ * so what is resident is decided by {@link BlockCache} rather than by the kernel.
+ * Data blocks are read into a direct buffer reused by all files read by the same thread
+ * and copied to heap, so a cache miss allocates no direct memory.
+ */
+final class ChannelFile implements FileRegions, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final FileChannel channel;
+    private final long size;
+
+    private ChannelFile(final FileChannel channel, final long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Opens file for reading, it should be closed once the table is released.
+     *
+     * @param file table file
+     * @return opened file
+     * @throws IOException if file can't be opened
+     */
+    static ChannelFile open(@NotNull final File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ChannelFile(channel, channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads file region into heap, used for parts parsed once like footer, index and Bloom filter.
+     */
+    @Override
+    public ByteBuffer region(final long position, final long limit) throws IOException {
+        return read(position, ByteBuffer.allocate(length(position, limit)));
+    }
+
+    /**
+     * Reads file region through the buffer of the thread into heap, used for data blocks.
+     * Blocks larger than the buffer make it grow.
+     *
+     * @param position start of region
+     * @param limit    end of region exclusive
+     * @return buffer with region contents
+     * @throws IOException              if region can't be read
+     * @throws IllegalArgumentException if region is out of file bounds or larger than 2 GiB
+     */
+    ByteBuffer block(final long position, final long limit) throws IOException {
+        final int length = length(position, limit);
+        ByteBuffer buffer = BUFFERS.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+            BUFFERS.set(buffer);
+        }
+        buffer.clear().limit(length);
+        return ByteBuffer.allocate(length).put(read(position, buffer)).flip().asReadOnlyBuffer();
+    }
+
+    private int length(final long position, final long limit) {
+        Preconditions.checkArgument(0 <= position && position <= limit && limit <= size
+                && limit - position <= Integer.MAX_VALUE, "Region [%s, %s) is out of file", position, limit);
+        return (int) (limit - position);
+    }
+
+    private ByteBuffer read(final long position, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File is shorter than " + (position + buffer.limit()));
+            }
+        }
+        return buffer.flip().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,29 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Chooses SSTables to merge in background.
+ */
+interface CompactionStrategy {
+    /**
+     * Selects the next compaction.
+     *
+     * @param tables all tables from the newest to the oldest one
+     * @return compaction or {@code null} if nothing should be done
+     */
+    @Nullable
+    CompactionTask select(@NotNull List<SSTable> tables);
+
+    /**
+     * Creates compaction which merges all given tables and drops tombstones.
+     *
+     * @param tables all tables from the newest to the oldest one
+     * @return compaction
+     */
+    @NotNull
+    CompactionTask selectAll(@NotNull List<SSTable> tables);
+}
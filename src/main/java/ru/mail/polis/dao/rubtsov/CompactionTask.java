@@ -0,0 +1,72 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compaction chosen by {@link CompactionStrategy}: either merge of tables into new ones
+ * or move of a single table to another level without rewriting it.
+ */
+final class CompactionTask {
+    static final long UNLIMITED_TABLE_SIZE = Long.MAX_VALUE;
+
+    private final List<SSTable> inputs;
+    private final int outputLevel;
+    private final boolean move;
+    private final boolean dropTombstones;
+    private final long maxTableSize;
+
+    private CompactionTask(final List<SSTable> inputs,
+                           final int outputLevel,
+                           final boolean move,
+                           final boolean dropTombstones,
+                           final long maxTableSize) {
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.outputLevel = outputLevel;
+        this.move = move;
+        this.dropTombstones = dropTombstones;
+        this.maxTableSize = maxTableSize;
+    }
+
+    /**
+     * Creates merge of given tables.
+     *
+     * @param inputs         tables to merge
+     * @param outputLevel    level of new tables
+     * @param dropTombstones whether tombstones can be dropped, i.e. there are no older tables they shadow
+     * @param maxTableSize   approximate size of data in a single new table
+     * @return task
+     */
+    static CompactionTask merge(@NotNull final List<SSTable> inputs,
+                                final int outputLevel,
+                                final boolean dropTombstones,
+                                final long maxTableSize) {
+        return new CompactionTask(inputs, outputLevel, false, dropTombstones, maxTableSize);
+    }
+
+    static CompactionTask move(@NotNull final SSTable table, final int outputLevel) {
+        return new CompactionTask(Collections.singletonList(table), outputLevel, true, false, UNLIMITED_TABLE_SIZE);
+    }
+
+    List<SSTable> getInputs() {
+        return inputs;
+    }
+
+    int getOutputLevel() {
+        return outputLevel;
+    }
+
+    boolean isMove() {
+        return move;
+    }
+
+    boolean isDropTombstones() {
+        return dropTombstones;
+    }
+
+    long getMaxTableSize() {
+        return maxTableSize;
+    }
+}
@@ -0,0 +1,256 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Merges SSTables on its own thread, compactions are chosen by {@link CompactionStrategy}.
+ * Compactions run one at a time, manual ones included, and replace only tables they have merged,
+ * so tables flushed meanwhile are kept. Merged tables are deleted once readers which pinned them finish.
+ */
+final class Compactor implements Closeable {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final long MIN_RANGE_SIZE = 8 * 1024 * 1024;
+    private static final int SAMPLES_PER_RANGE = 16;
+
+    private final TableSet tables;
+    private final CompactionStrategy strategy;
+    private final TableFactory tableFactory;
+    private final DAOConfig config;
+    private final StorageStats stats;
+    private final Logger logger = LoggerFactory.getLogger(Compactor.class);
+    private final Lock compactionLock = new ReentrantLock();
+    private final Semaphore requests = new Semaphore(0);
+    private final ForkJoinPool pool;
+    private final Thread thread;
+    private volatile boolean stopped;
+
+    Compactor(@NotNull final TableSet tables,
+              @NotNull final TableFactory tableFactory,
+              @NotNull final DAOConfig config,
+              @NotNull final StorageStats stats) {
+        this.tables = tables;
+        this.strategy = config.getCompactionStrategy();
+        this.tableFactory = tableFactory;
+        this.config = config;
+        this.stats = stats;
+        this.pool = new ForkJoinPool(config.getCompactionParallelism());
+        this.thread = new Thread(this::run, "compactor");
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Asks background thread to check whether some tables should be merged.
+     */
+    void schedule() {
+        requests.release();
+    }
+
+    private void run() {
+        while (!stopped) {
+            try {
+                requests.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            requests.drainPermits();
+            while (!stopped && compactSelected()) {
+                logger.info("Number of files after compaction: {}", tables.size());
+            }
+        }
+    }
+
+    private boolean compactSelected() {
+        compactionLock.lock();
+        try {
+            final CompactionTask task = strategy.select(tables.snapshot());
+            if (task == null) {
+                return false;
+            }
+            execute(task);
+            return true;
+        } catch (IOException e) {
+            logger.error("Background compaction failed", e);
+            return false;
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Merges all current tables and drops tombstones.
+     *
+     * @throws IOException if merged table can't be written
+     */
+    void compactAll() throws IOException {
+        compactionLock.lock();
+        try {
+            final List<SSTable> snapshot = tables.snapshot();
+            if (!snapshot.isEmpty()) {
+                execute(strategy.selectAll(snapshot));
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private void execute(final CompactionTask task) throws IOException {
+        if (task.isMove()) {
+            final SSTable table = task.getInputs().get(0);
+            final SSTable moved = table.moveTo(task.getOutputLevel());
+            try {
+                tables.replace(Collections.singletonList(table), Collections.singletonList(moved));
+            } catch (IOException e) {
+                moved.release();
+                throw e;
+            }
+            // Manifest lists the new name already, so the file is renamed after it
+            moved.completeMove();
+            logger.info("{} moved to level {}", table.getUniqueID(), task.getOutputLevel());
+        } else {
+            merge(task);
+        }
+    }
+
+    /**
+     * Merges tables of task into new ones of limited size.
+     * Large inputs are split into key ranges by keys sampled from table indexes, ranges are merged in parallel
+     * and all resulting tables replace inputs at once.
+     * Merges into level 0 are not split: every table of level 0 is probed by reads and stalls writes,
+     * whatever its key range is.
+     * Tombstones are dropped only when there are no older tables they should shadow.
+     */
+    private void merge(final CompactionTask task) throws IOException {
+        final long start = System.currentTimeMillis();
+        final List<SSTable> inputs = task.getInputs();
+        final List<ByteBuffer> bounds = task.getOutputLevel() > 0 ? splitPoints(inputs) : Collections.emptyList();
+        final List<Callable<Void>> ranges = new ArrayList<>(bounds.size() + 1);
+        final Queue<SSTable> outputs = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i <= bounds.size(); i++) {
+            final ByteBuffer from = i == 0 ? EMPTY : bounds.get(i - 1);
+            final ByteBuffer to = i == bounds.size() ? null : bounds.get(i);
+            ranges.add(() -> {
+                mergeRange(task, from, to, outputs);
+                return null;
+            });
+        }
+        try {
+            for (final Future<Void> range : pool.invokeAll(ranges)) {
+                range.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            discard(outputs);
+            throw new IOException("Can't merge tables", e.getCause() == null ? e : e.getCause());
+        }
+        try {
+            tables.replace(inputs, outputs);
+        } catch (IOException e) {
+            discard(outputs);
+            throw e;
+        }
+        for (final SSTable table : inputs) {
+            table.markObsolete();
+        }
+        logger.info("{} tables merged into {} tables of level {} in {} ranges in {} ms", inputs.size(),
+                outputs.size(), task.getOutputLevel(), ranges.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Chooses bounds of key ranges, so that every range gets about the same amount of data.
+     */
+    private List<ByteBuffer> splitPoints(final List<SSTable> inputs) {
+        long size = 0;
+        for (final SSTable table : inputs) {
+            size += table.sizeInBytes();
+        }
+        final int ranges = (int) Math.min(config.getCompactionParallelism(), size / MIN_RANGE_SIZE);
+        if (ranges <= 1) {
+            return Collections.emptyList();
+        }
+        // Every table gets samples proportional to its size, so sampled keys follow data distribution
+        final List<ByteBuffer> samples = new ArrayList<>();
+        for (final SSTable table : inputs) {
+            final int amount = (int) Math.max(1, SAMPLES_PER_RANGE * ranges * table.sizeInBytes() / size);
+            samples.addAll(table.sampleKeys(amount));
+        }
+        samples.sort(Keys.COMPARATOR);
+        final List<ByteBuffer> bounds = new ArrayList<>(ranges - 1);
+        for (int i = 1; i < ranges; i++) {
+            final ByteBuffer bound = samples.get(i * samples.size() / ranges);
+            final ByteBuffer previous = bounds.isEmpty() ? EMPTY : bounds.get(bounds.size() - 1);
+            if (Keys.compare(bound, previous) > 0) {
+                bounds.add(bound);
+            }
+        }
+        return bounds;
+    }
+
+    private void mergeRange(final CompactionTask task,
+                            final ByteBuffer from,
+                            @Nullable final ByteBuffer to,
+                            final Queue<SSTable> outputs) throws IOException {
+        final List<TableCursor> cursors = new ArrayList<>(task.getInputs().size());
+        for (final SSTable table : task.getInputs()) {
+            if (table.overlaps(from, to)) {
+                cursors.add(tableFactory.throttle(table.cursor(from)));
+            }
+        }
+        final TableCursor merged = TableCursors.merge(cursors, !task.isDropTombstones());
+        final Iterator<Item> items = IteratorUtils.until(TableCursors.items(merged), to);
+        while (items.hasNext()) {
+            final SSTable output = tableFactory.write(IteratorUtils.limitBySize(items, task.getMaxTableSize()),
+                    SSTable.newUniqueID(task.getOutputLevel()));
+            stats.compacted(output.sizeInBytes());
+            outputs.add(output);
+        }
+    }
+
+    /**
+     * Drops tables written by a failed merge, their files are closed and deleted.
+     */
+    private static void discard(final Collection<SSTable> outputs) {
+        for (final SSTable output : outputs) {
+            output.markObsolete();
+            output.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        requests.release();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec of SSTable data blocks.
+ * Compressed tables store every block as [codec id][uncompressed size][payload],
+ * a block which doesn't get smaller is stored as is with {@link #NONE} id.
+ */
+public enum Compression {
+    NONE {
+        @Override
+        ByteBuffer compress(final ByteBuffer block) {
+            return block.duplicate();
+        }
+
+        @Override
+        void decompress(final ByteBuffer payload, final byte[] block) {
+            Preconditions.checkArgument(payload.remaining() == block.length, "Corrupted block");
+            payload.duplicate().get(block);
+        }
+    },
+    DEFLATE {
+        @Override
+        ByteBuffer compress(final ByteBuffer block) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(block.duplicate());
+                deflater.finish();
+                ByteBuffer out = ByteBuffer.allocate(block.remaining() + 64);
+                while (!deflater.finished()) {
+                    if (!out.hasRemaining()) {
+                        out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+                    }
+                    deflater.deflate(out);
+                }
+                return out.flip();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        void decompress(final ByteBuffer payload, final byte[] block) {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(payload.duplicate());
+                final int size = inflater.inflate(block);
+                Preconditions.checkArgument(size == block.length && inflater.finished(), "Corrupted block");
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("Corrupted block", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+    LZ4 {
+        @Override
+        ByteBuffer compress(final ByteBuffer block) {
+            final byte[] src = new byte[block.remaining()];
+            block.duplicate().get(src);
+            final byte[] dst = new byte[Lz4Codec.maxCompressedSize(src.length)];
+            return ByteBuffer.wrap(dst, 0, Lz4Codec.compress(src, src.length, dst));
+        }
+
+        @Override
+        void decompress(final ByteBuffer payload, final byte[] block) {
+            final byte[] src = new byte[payload.remaining()];
+            payload.duplicate().get(src);
+            Lz4Codec.decompress(src, 0, src.length, block);
+        }
+    };
+
+    private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    abstract ByteBuffer compress(ByteBuffer block);
+
+    abstract void decompress(ByteBuffer payload, byte[] block);
+
+    /**
+     * Returns codec by its identifier stored in SSTable.
+     *
+     * @param id identifier
+     * @return codec
+     * @throws IllegalArgumentException if identifier is unknown
+     */
+    static Compression of(final int id) {
+        Preconditions.checkArgument(id >= 0 && id < values().length, "Unknown compression %s", id);
+        return values()[id];
+    }
+
+    int getId() {
+        return ordinal();
+    }
+
+    /**
+     * Compresses block and prepends it with header.
+     *
+     * @param block finished block
+     * @return buffer ready to be written
+     */
+    ByteBuffer pack(final ByteBuffer block) {
+        final ByteBuffer compressed = compress(block);
+        final Compression codec = compressed.remaining() < block.remaining() ? this : NONE;
+        final ByteBuffer payload = codec == this ? compressed : block.duplicate();
+        return ByteBuffer.allocate(HEADER_SIZE + payload.remaining())
+                .put((byte) codec.getId())
+                .putInt(block.remaining())
+                .put(payload)
+                .flip();
+    }
+
+    /**
+     * Restores block written by {@link #pack(ByteBuffer)}.
+     *
+     * @param stored block with header
+     * @return read only block contents
+     * @throws IllegalArgumentException if block is corrupted
+     */
+    static ByteBuffer unpack(final ByteBuffer stored) {
+        Preconditions.checkArgument(stored.remaining() >= HEADER_SIZE, "Corrupted block");
+        final ByteBuffer payload = stored.duplicate();
+        final Compression codec = of(payload.get());
+        final int size = payload.getInt();
+        Preconditions.checkArgument(size >= 0, "Corrupted block");
+        final byte[] block = new byte[size];
+        codec.decompress(payload, block);
+        return ByteBuffer.wrap(block).asReadOnlyBuffer();
+    }
+}
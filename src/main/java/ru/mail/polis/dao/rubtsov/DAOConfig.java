@@ -0,0 +1,503 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tunable parameters of {@link MyDAO}.
+ */
+public final class DAOConfig {
+    private static final double DEFAULT_BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final int DEFAULT_BLOCK_SIZE = 4 * 1024;
+    private static final long DEFAULT_BLOCK_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_COMPACTION_MIN_THRESHOLD = 4;
+    private static final int DEFAULT_COMPACTION_MAX_THRESHOLD = 32;
+    private static final double DEFAULT_COMPACTION_SIZE_RATIO = 2;
+    private static final long MIN_COMPACTION_TABLE_SIZE = 1024 * 1024;
+    private static final long DEFAULT_TARGET_TABLE_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_WAL_SYNC_PERIOD = 10;
+    private static final int DEFAULT_FLUSH_THREADS = 2;
+    private static final int DEFAULT_STALL_SOFT_MEMTABLES = 2;
+    private static final int DEFAULT_STALL_HARD_MEMTABLES = 6;
+    private static final int DEFAULT_STALL_SOFT_LEVEL0_TABLES = 20;
+    private static final int DEFAULT_STALL_HARD_LEVEL0_TABLES = 36;
+
+    private final double bloomFalsePositiveRate;
+    private final int blockSize;
+    private final Compression compression;
+    private final long blockCacheSize;
+    private final ReadMode readMode;
+    private final long rowCacheSize;
+    private final long memoryBudget;
+    private final int compactionMinThreshold;
+    private final int compactionMaxThreshold;
+    private final double compactionSizeRatio;
+    private final CompactionStyle compactionStyle;
+    private final long targetTableSize;
+    private final int compactionParallelism;
+    private final long backgroundIoRate;
+    private final WalSyncPolicy walSyncPolicy;
+    private final long walSyncPeriod;
+    private final MemTableStorage memTableStorage;
+    private final int flushThreads;
+    private final int stallSoftMemTables;
+    private final int stallHardMemTables;
+    private final int stallSoftLevel0Tables;
+    private final int stallHardLevel0Tables;
+
+    /**
+     * Way of background compaction.
+     */
+    public enum CompactionStyle {
+        /**
+         * Merges tables of similar size, see {@link SizeTieredCompactionStrategy}.
+         */
+        SIZE_TIERED,
+        /**
+         * Keeps tables in levels of disjoint tables, see {@link LeveledCompactionStrategy}.
+         */
+        LEVELED
+    }
+
+    /**
+     * When writes logged to write-ahead log reach storage device.
+     */
+    public enum WalSyncPolicy {
+        /**
+         * Every write waits for sync, concurrent writes share one.
+         */
+        EVERY_WRITE,
+        /**
+         * Writes are synced in background every configured period.
+         */
+        PERIODIC,
+        /**
+         * Writes are left to OS, they survive crash of the process but not of the machine.
+         */
+        OS
+    }
+
+    /**
+     * Where memtables keep keys and values.
+     */
+    public enum MemTableStorage {
+        /**
+         * Items are kept on heap as they are written.
+         */
+        HEAP,
+        /**
+         * Keys and values are copied into off-heap arena of the table, only the index stays on heap.
+         */
+        OFF_HEAP
+    }
+
+    /**
+     * How data blocks of SSTables are read.
+     */
+    public enum ReadMode {
+        /**
+         * Tables are mapped, the kernel decides which pages stay in memory.
+         */
+        MMAP,
+        /**
+         * Blocks are read by positional reads of file channel and cached by {@link BlockCache},
+         * uncompressed blocks are kept off heap.
+         */
+        PREAD
+    }
+
+    private DAOConfig(final Builder builder) {
+        this.bloomFalsePositiveRate = builder.bloomFalsePositiveRate;
+        this.blockSize = builder.blockSize;
+        this.compression = builder.compression;
+        this.blockCacheSize = builder.blockCacheSize;
+        this.readMode = builder.readMode;
+        this.rowCacheSize = builder.rowCacheSize;
+        this.memoryBudget = builder.memoryBudget;
+        this.compactionMinThreshold = builder.compactionMinThreshold;
+        this.compactionMaxThreshold = builder.compactionMaxThreshold;
+        this.compactionSizeRatio = builder.compactionSizeRatio;
+        this.compactionStyle = builder.compactionStyle;
+        this.targetTableSize = builder.targetTableSize;
+        this.compactionParallelism = builder.compactionParallelism;
+        this.backgroundIoRate = builder.backgroundIoRate;
+        this.walSyncPolicy = builder.walSyncPolicy;
+        this.walSyncPeriod = builder.walSyncPeriod;
+        this.memTableStorage = builder.memTableStorage;
+        this.flushThreads = builder.flushThreads;
+        this.stallSoftMemTables = builder.stallSoftMemTables;
+        this.stallHardMemTables = builder.stallHardMemTables;
+        this.stallSoftLevel0Tables = builder.stallSoftLevel0Tables;
+        this.stallHardLevel0Tables = builder.stallHardLevel0Tables;
+    }
+
+    public static DAOConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    ReadMode getReadMode() {
+        return readMode;
+    }
+
+    long getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    int getCompactionParallelism() {
+        return compactionParallelism;
+    }
+
+    long getBackgroundIoRate() {
+        return backgroundIoRate;
+    }
+
+    WalSyncPolicy getWalSyncPolicy() {
+        return walSyncPolicy;
+    }
+
+    long getWalSyncPeriod() {
+        return walSyncPeriod;
+    }
+
+    MemTableStorage getMemTableStorage() {
+        return memTableStorage;
+    }
+
+    int getFlushThreads() {
+        return flushThreads;
+    }
+
+    int getStallSoftMemTables() {
+        return stallSoftMemTables;
+    }
+
+    int getStallHardMemTables() {
+        return stallHardMemTables;
+    }
+
+    int getStallSoftLevel0Tables() {
+        return stallSoftLevel0Tables;
+    }
+
+    int getStallHardLevel0Tables() {
+        return stallHardLevel0Tables;
+    }
+
+    CompactionStrategy getCompactionStrategy() {
+        if (compactionStyle == CompactionStyle.LEVELED) {
+            return new LeveledCompactionStrategy(compactionMinThreshold, targetTableSize);
+        }
+        return new SizeTieredCompactionStrategy(compactionMinThreshold, compactionMaxThreshold,
+                compactionSizeRatio, MIN_COMPACTION_TABLE_SIZE);
+    }
+
+    public static final class Builder {
+        private double bloomFalsePositiveRate = DEFAULT_BLOOM_FALSE_POSITIVE_RATE;
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private Compression compression = Compression.NONE;
+        private long blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+        private ReadMode readMode = ReadMode.MMAP;
+        private long rowCacheSize;
+        private long memoryBudget;
+        private int compactionMinThreshold = DEFAULT_COMPACTION_MIN_THRESHOLD;
+        private int compactionMaxThreshold = DEFAULT_COMPACTION_MAX_THRESHOLD;
+        private double compactionSizeRatio = DEFAULT_COMPACTION_SIZE_RATIO;
+        private CompactionStyle compactionStyle = CompactionStyle.SIZE_TIERED;
+        private long targetTableSize = DEFAULT_TARGET_TABLE_SIZE;
+        private int compactionParallelism = Runtime.getRuntime().availableProcessors();
+        private long backgroundIoRate;
+        private WalSyncPolicy walSyncPolicy = WalSyncPolicy.PERIODIC;
+        private long walSyncPeriod = DEFAULT_WAL_SYNC_PERIOD;
+        private MemTableStorage memTableStorage = MemTableStorage.HEAP;
+        private int flushThreads = DEFAULT_FLUSH_THREADS;
+        private int stallSoftMemTables = DEFAULT_STALL_SOFT_MEMTABLES;
+        private int stallHardMemTables = DEFAULT_STALL_HARD_MEMTABLES;
+        private int stallSoftLevel0Tables = DEFAULT_STALL_SOFT_LEVEL0_TABLES;
+        private int stallHardLevel0Tables = DEFAULT_STALL_HARD_LEVEL0_TABLES;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets false positive rate of Bloom filters written with new SSTables.
+         *
+         * @param bloomFalsePositiveRate probability in (0, 1)
+         * @return this builder
+         */
+        public Builder bloomFalsePositiveRate(final double bloomFalsePositiveRate) {
+            Preconditions.checkArgument(bloomFalsePositiveRate > 0 && bloomFalsePositiveRate < 1,
+                    "False positive rate should be in (0, 1)");
+            this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Sets target size of SSTable data blocks.
+         *
+         * @param blockSize size in bytes
+         * @return this builder
+         */
+        public Builder blockSize(final int blockSize) {
+            Preconditions.checkArgument(blockSize > 0, "Block size should be positive");
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Sets codec of data blocks in new SSTables, tables already written keep their codec.
+         *
+         * @param compression codec
+         * @return this builder
+         */
+        public Builder compression(@NotNull final Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Sets capacity of cache of decompressed blocks.
+         *
+         * @param blockCacheSize size in bytes
+         * @return this builder
+         */
+        public Builder blockCacheSize(final long blockCacheSize) {
+            Preconditions.checkArgument(blockCacheSize >= 0, "Block cache size should not be negative");
+            this.blockCacheSize = blockCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets how data blocks of SSTables are read, with positional reads block cache holds all data
+         * kept in memory. Bloom filters and block indexes are kept in heap in both modes.
+         *
+         * @param readMode read mode
+         * @return this builder
+         */
+        public Builder readMode(@NotNull final ReadMode readMode) {
+            this.readMode = readMode;
+            return this;
+        }
+
+        /**
+         * Sets capacity of cache of items found by point reads in SSTables.
+         *
+         * @param rowCacheSize size in bytes, 0 disables the cache
+         * @return this builder
+         */
+        public Builder rowCacheSize(final long rowCacheSize) {
+            Preconditions.checkArgument(rowCacheSize >= 0, "Row cache size should not be negative");
+            this.rowCacheSize = rowCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets total memory shared by memtables, caches and loaded Bloom filters and block indexes,
+         * see {@link MemoryBudget}. The split follows the workload, cache sizes only set how the caches
+         * share their part, flush threshold derived from heap size is ignored.
+         *
+         * @param memoryBudget size in bytes, 0 keeps sizes fixed
+         * @return this builder
+         */
+        public Builder memoryBudget(final long memoryBudget) {
+            Preconditions.checkArgument(memoryBudget >= 0, "Memory budget should not be negative");
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Sets how many tables of similar size, or level 0 tables for leveled style, start background compaction.
+         *
+         * @param compactionMinThreshold tables amount, at least 2
+         * @return this builder
+         */
+        public Builder compactionMinThreshold(final int compactionMinThreshold) {
+            Preconditions.checkArgument(compactionMinThreshold >= 2, "At least 2 tables can be merged");
+            this.compactionMinThreshold = compactionMinThreshold;
+            return this;
+        }
+
+        /**
+         * Sets maximum amount of tables merged by one background compaction.
+         *
+         * @param compactionMaxThreshold tables amount
+         * @return this builder
+         */
+        public Builder compactionMaxThreshold(final int compactionMaxThreshold) {
+            Preconditions.checkArgument(compactionMaxThreshold >= 2, "At least 2 tables can be merged");
+            this.compactionMaxThreshold = compactionMaxThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how many times sizes of tables merged together may differ.
+         *
+         * @param compactionSizeRatio ratio, at least 1
+         * @return this builder
+         */
+        public Builder compactionSizeRatio(final double compactionSizeRatio) {
+            Preconditions.checkArgument(compactionSizeRatio >= 1, "Size ratio should be at least 1");
+            this.compactionSizeRatio = compactionSizeRatio;
+            return this;
+        }
+
+        /**
+         * Sets way of background compaction, manual compaction merges all tables in any case.
+         *
+         * @param compactionStyle compaction style
+         * @return this builder
+         */
+        public Builder compactionStyle(@NotNull final CompactionStyle compactionStyle) {
+            this.compactionStyle = compactionStyle;
+            return this;
+        }
+
+        /**
+         * Sets size of tables written by leveled compaction.
+         *
+         * @param targetTableSize size in bytes
+         * @return this builder
+         */
+        public Builder targetTableSize(final long targetTableSize) {
+            Preconditions.checkArgument(targetTableSize > 0, "Table size should be positive");
+            this.targetTableSize = targetTableSize;
+            return this;
+        }
+
+        /**
+         * Sets how many key ranges of a large compaction may be merged at once.
+         * Only compactions into level 1 and deeper are split, see {@link CompactionStyle#LEVELED}.
+         *
+         * @param compactionParallelism amount of threads
+         * @return this builder
+         */
+        public Builder compactionParallelism(final int compactionParallelism) {
+            Preconditions.checkArgument(compactionParallelism > 0, "Parallelism should be positive");
+            this.compactionParallelism = compactionParallelism;
+            return this;
+        }
+
+        /**
+         * Sets rate of SSTable reads and writes by flushes and compactions.
+         * The rate is lowered while foreground reads are slow and raised while storage is idle.
+         *
+         * @param megabytesPerSecond rate in MB/s, 0 means no limit
+         * @return this builder
+         */
+        public Builder backgroundIoRate(final int megabytesPerSecond) {
+            Preconditions.checkArgument(megabytesPerSecond >= 0, "I/O rate should not be negative");
+            this.backgroundIoRate = (long) megabytesPerSecond * 1024 * 1024;
+            return this;
+        }
+
+        /**
+         * Sets when logged writes are synced to storage device, writes not synced yet may be lost by crash.
+         *
+         * @param walSyncPolicy sync policy
+         * @return this builder
+         */
+        public Builder walSyncPolicy(@NotNull final WalSyncPolicy walSyncPolicy) {
+            this.walSyncPolicy = walSyncPolicy;
+            return this;
+        }
+
+        /**
+         * Sets period of background sync of write-ahead log, it is used by {@link WalSyncPolicy#PERIODIC}.
+         *
+         * @param millis period in milliseconds
+         * @return this builder
+         */
+        public Builder walSyncPeriod(final long millis) {
+            Preconditions.checkArgument(millis > 0, "Sync period should be positive");
+            this.walSyncPeriod = millis;
+            return this;
+        }
+
+        /**
+         * Sets where memtables keep keys and values, off-heap tables are flushed by memory they take.
+         *
+         * @param memTableStorage storage of memtables
+         * @return this builder
+         */
+        public Builder memTableStorage(@NotNull final MemTableStorage memTableStorage) {
+            this.memTableStorage = memTableStorage;
+            return this;
+        }
+
+        /**
+         * Sets how many memtables may be written at once, they are installed in order of writes anyway.
+         *
+         * @param flushThreads amount of threads
+         * @return this builder
+         */
+        public Builder flushThreads(final int flushThreads) {
+            Preconditions.checkArgument(flushThreads > 0, "At least one flush thread is needed");
+            this.flushThreads = flushThreads;
+            return this;
+        }
+
+        /**
+         * Sets how many memtables may wait for flush before writes are delayed and before they are rejected.
+         *
+         * @param soft amount of memtables which starts delays
+         * @param hard amount of memtables which starts rejections
+         * @return this builder
+         */
+        public Builder writeStallMemTables(final int soft, final int hard) {
+            Preconditions.checkArgument(soft >= 0 && hard > soft, "Hard limit should be greater than soft one");
+            this.stallSoftMemTables = soft;
+            this.stallHardMemTables = hard;
+            return this;
+        }
+
+        /**
+         * Sets how many level 0 tables may be waiting for compaction before writes are delayed
+         * and before they are rejected, with size-tiered compaction all tables are level 0 ones.
+         *
+         * @param soft amount of tables which starts delays
+         * @param hard amount of tables which starts rejections
+         * @return this builder
+         */
+        public Builder writeStallLevel0Tables(final int soft, final int hard) {
+            Preconditions.checkArgument(soft >= 0 && hard > soft, "Hard limit should be greater than soft one");
+            this.stallSoftLevel0Tables = soft;
+            this.stallHardLevel0Tables = hard;
+            return this;
+        }
+
+        /**
+         * Creates configuration.
+         *
+         * @return configuration
+         * @throws IllegalArgumentException if compaction thresholds are inconsistent
+         */
+        public DAOConfig build() {
+            Preconditions.checkArgument(compactionMinThreshold <= compactionMaxThreshold,
+                    "Compaction min threshold is greater than max one");
+            return new DAOConfig(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to regions of a table file, either mapped or read on demand.
+ */
+interface FileRegions {
+    long size();
+
+    /**
+     * Returns read only contents of file region.
+     *
+     * @param position start of region
+     * @param limit    end of region exclusive
+     * @return buffer with region contents
+     * @throws IOException              if region can't be read
+     * @throws IllegalArgumentException if region is out of file bounds or larger than 2 GiB
+     */
+    ByteBuffer region(long position, long limit) throws IOException;
+}
@@ -0,0 +1,200 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes memtables handed off by {@link MemTablePool} until the last table is flushed on close.
+ * Tables are written by a pool of threads in parallel, but installed in order of generations:
+ * a table leaves memory only after all older ones, so a key found in memory is never older than one on disk.
+ * A table which fails to be written is retried, and tables of later generations wait for it.
+ */
+final class Flusher extends Thread {
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 2_000;
+
+    private final Logger logger = LoggerFactory.getLogger(Flusher.class);
+    private final MemTablePool memTablePool;
+    private final TableSet ssTables;
+    private final TableWriter writer;
+    private final Runnable onFlush;
+    private final ExecutorService writers;
+    private final Semaphore permits;
+    private final Map<Long, Installation> completed = new HashMap<>();
+    // Generations of the pool start with 0 and every one of them is handed off once
+    private long nextGeneration;
+    private boolean halted;
+    private volatile boolean stopping;
+
+    /**
+     * Creates flusher, it should be started.
+     *
+     * @param memTablePool pool of memtables
+     * @param ssTables     set to install flushed tables to
+     * @param writer       writer of SSTables
+     * @param onFlush      action run after a table is installed
+     * @param threads      amount of tables written at once
+     */
+    Flusher(@NotNull final MemTablePool memTablePool,
+            @NotNull final TableSet ssTables,
+            @NotNull final TableWriter writer,
+            @NotNull final Runnable onFlush,
+            final int threads) {
+        super("flusher");
+        this.memTablePool = memTablePool;
+        this.ssTables = ssTables;
+        this.writer = writer;
+        this.onFlush = onFlush;
+        this.writers = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("flusher-%d").build());
+        this.permits = new Semaphore(threads);
+    }
+
+    @Override
+    public void run() {
+        boolean poisonReceived = false;
+        while (!poisonReceived && !isInterrupted()) {
+            logger.info("Number of files: {}", ssTables.size());
+            try {
+                // Tables wait in the pool's queue while all writers are busy
+                permits.acquire();
+                final TableToFlush tableToFlush = memTablePool.takeToFlush();
+                poisonReceived = tableToFlush.isPoisonPill();
+                writers.execute(() -> {
+                    try {
+                        flush(tableToFlush);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                interrupt();
+            }
+        }
+        // Failed flushes are not retried anymore, so close doesn't wait for a broken disk
+        stopping = true;
+        writers.shutdown();
+        try {
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            interrupt();
+        }
+        if (poisonReceived) {
+            logger.info("Poison pill received. Flushing stopped.");
+        }
+    }
+
+    /**
+     * Writes the table, retrying while the flusher runs: later generations wait for it to be installed.
+     * Once the flusher stops, a table which still can't be written stays in its log for recovery.
+     */
+    private void flush(final TableToFlush tableToFlush) {
+        final MemTable table = tableToFlush.getTable();
+        long delay = MIN_RETRY_DELAY_MILLIS;
+        while (true) {
+            try {
+                final SSTable flushed = table.sizeInBytes() > 0 ? writer.write(table) : null;
+                complete(tableToFlush.getGeneration(), new Installation(flushed, false));
+                return;
+            } catch (IOException e) {
+                if (stopping) {
+                    logger.error("Error while flushing a table {}, it is left in its log", table.getUniqueID(), e);
+                    break;
+                }
+                logger.error("Error while flushing a table {}, retry in {} ms", table.getUniqueID(), delay, e);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+        complete(tableToFlush.getGeneration(), new Installation(null, true));
+    }
+
+    /**
+     * Installs completed tables in order of generations.
+     * A table which is not installed halts installation for good: later tables would shadow its newer data
+     * on restart, when its log is replayed into memory. So they stay in memory and in their logs as well.
+     * So does a table whose log is left after install, replayed log would shadow later tables instead.
+     */
+    private synchronized void complete(final long generation, final Installation installation) {
+        completed.put(generation, installation);
+        Installation next;
+        while ((next = completed.remove(nextGeneration)) != null) {
+            if (halted) {
+                next.discard();
+            } else if (!install(nextGeneration, next)) {
+                halted = true;
+                logger.error("Flushes are halted at generation {}, later tables are kept in logs", nextGeneration);
+            }
+            nextGeneration++;
+        }
+    }
+
+    private boolean install(final long generation, final Installation installation) {
+        if (installation.failed) {
+            return false;
+        }
+        if (installation.table != null) {
+            try {
+                ssTables.add(installation.table);
+            } catch (IOException e) {
+                logger.error("Error while installing a table of generation {}", generation, e);
+                installation.discard();
+                return false;
+            }
+        }
+        try {
+            memTablePool.flushed(generation);
+        } catch (IOException e) {
+            logger.error("Error while deleting log of generation {}", generation, e);
+            return false;
+        }
+        onFlush.run();
+        return true;
+    }
+
+    /**
+     * Writes memtable as SSTable.
+     */
+    @FunctionalInterface
+    interface TableWriter {
+        @NotNull
+        SSTable write(@NotNull MemTable table) throws IOException;
+    }
+
+    /**
+     * Outcome of a flush waiting for older generations, a table is absent for empty memtables.
+     */
+    private static final class Installation {
+        @Nullable
+        private final SSTable table;
+        private final boolean failed;
+
+        Installation(@Nullable final SSTable table, final boolean failed) {
+            this.table = table;
+            this.failed = failed;
+        }
+
+        void discard() {
+            if (table != null) {
+                table.markObsolete();
+                table.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.math.IntMath;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often keys were accessed recently, it is not thread safe.
+ * Every counter is halved once the sketch has seen ten times as many accesses as keys it expects,
+ * so old popularity fades away.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777_7777_7777_7777L;
+    private static final int COUNTER_MAX = 15;
+    // 8 MB, keys beyond it share counters and estimates get coarser
+    private static final int MAX_WORDS = 1 << 20;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param counters expected amount of distinct keys, the table gets a word of 16 counters per key
+     *                 rounded up to a power of two, so every row has four counters per key
+     *                 (up to {@link #MAX_WORDS} words)
+     */
+    FrequencySketch(final int counters) {
+        final int words = IntMath.ceilingPowerOfTwo(Math.max(1, Math.min(counters, MAX_WORDS)));
+        this.table = new long[words];
+        this.sampleSize = 10 * words;
+    }
+
+    /**
+     * Returns estimated frequency of the key.
+     *
+     * @param hash hash of the key
+     * @return frequency in [0, 15]
+     */
+    int frequency(final int hash) {
+        int frequency = COUNTER_MAX;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(index(hash, i), offset(hash, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts an access to the key.
+     *
+     * @param hash hash of the key
+     */
+    void increment(final int hash) {
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = index(hash, i);
+            final int offset = offset(hash, i);
+            if (counter(index, offset) < COUNTER_MAX) {
+                table[index] += 1L << offset;
+            }
+        }
+        if (++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private int counter(final int index, final int offset) {
+        return (int) (table[index] >>> offset) & COUNTER_MAX;
+    }
+
+    private int index(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & (table.length - 1);
+    }
+
+    // Every row of the sketch uses its own 4-bit counter of a word, low bits of hash are skipped
+    // as callers spread keys over sketches by them
+    private static int offset(final int hash, final int i) {
+        return (((hash >>> ((i << 3) + 4)) & 3) | (i << 2)) << 2;
+    }
+}
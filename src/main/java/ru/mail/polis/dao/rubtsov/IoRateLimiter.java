@@ -0,0 +1,100 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket shared by background reads and writes of SSTables, tokens are bytes.
+ * The bucket refills at the current rate and holds at most one second of it, a caller which takes more
+ * than available goes into debt and sleeps until it is paid, so callers are served in order.
+ * Rate adapts to foreground load: it is lowered while foreground reads are slow
+ * and raised while there are no foreground operations at all.
+ */
+final class IoRateLimiter {
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SLOW_READ_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final int IDLE_BURST = 4;
+    private static final int SLOW_THROTTLE = 4;
+    private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+    private final long bytesPerSecond;
+    private final AtomicLong foregroundLatency = new AtomicLong();
+    private volatile long lastForegroundTime = System.nanoTime();
+    private double tokens;
+    private long refillTime = System.nanoTime();
+
+    /**
+     * Creates limiter.
+     *
+     * @param bytesPerSecond base rate, 0 means no limit
+     */
+    IoRateLimiter(final long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    boolean isEnabled() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Takes tokens for given amount of bytes, waiting for them if needed.
+     * Waiting stops if thread is interrupted, the interrupt flag is kept.
+     *
+     * @param bytes amount of bytes to read or write
+     */
+    void acquire(final long bytes) {
+        if (!isEnabled() || bytes <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final double rate = currentRate(now);
+            tokens = Math.min(rate, tokens + (now - refillTime) * rate / TimeUnit.SECONDS.toNanos(1));
+            refillTime = now;
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reports latency of a foreground read.
+     * Latency is smoothed, so a single slow read doesn't slow background work down.
+     *
+     * @param latencyNanos read duration
+     */
+    void foregroundRead(final long latencyNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        lastForegroundTime = System.nanoTime();
+        foregroundLatency.updateAndGet(l -> l + ((latencyNanos - l) >> LATENCY_SMOOTHING_SHIFT));
+    }
+
+    /**
+     * Marks that a foreground operation happened, so the node is not idle.
+     */
+    void foregroundWrite() {
+        if (!isEnabled()) {
+            return;
+        }
+        lastForegroundTime = System.nanoTime();
+    }
+
+    private double currentRate(final long now) {
+        if (now - lastForegroundTime > IDLE_NANOS) {
+            return (double) bytesPerSecond * IDLE_BURST;
+        }
+        if (foregroundLatency.get() > SLOW_READ_NANOS) {
+            return (double) bytesPerSecond / SLOW_THROTTLE;
+        }
+        return bytesPerSecond;
+    }
+}
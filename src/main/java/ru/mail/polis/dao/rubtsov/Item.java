@@ -5,11 +5,11 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
 
-import static java.util.Comparator.comparing;
-
 public final class Item implements Comparable<Item> {
-    static final Comparator<Item> COMPARATOR = comparing(Item::getKey)
-            .thenComparing(comparing(Item::getTimeStampAbs).reversed());
+    static final Comparator<Item> COMPARATOR = (left, right) -> {
+        final int compare = Keys.compare(left.key, right.key);
+        return compare == 0 ? Long.compare(right.getTimeStampAbs(), left.getTimeStampAbs()) : compare;
+    };
     static final ByteBuffer TOMBSTONE = ByteBuffer.allocate(0);
 
     private final ByteBuffer key;
@@ -1,9 +1,9 @@
 package ru.mail.polis.dao.rubtsov;
 
-import com.google.common.collect.Iterators;
-import ru.mail.polis.dao.Iters;
+import com.google.common.collect.AbstractIterator;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 
 final class IteratorUtils {
@@ -11,17 +11,49 @@ final class IteratorUtils {
     }
 
     /**
-     * Receives some {@link Collection} of iterators over {@link Item}s, merges it,
-     * collapses equals by key and filters them according to existence.
-     * @param iterators collection with iterators
-     * @return iterator after all transformations
+     * Returns a view of the first items whose total size reaches given limit, the rest stays in source iterator.
+     * Used to split compaction output into several tables.
+     *
+     * @param items    source iterator
+     * @param maxBytes size of items after which the view ends
+     * @return iterator over a part of items
      */
-    static Iterator<Item> itersTransformWithoutRemoved(final Collection<Iterator<Item>> iterators) {
-        return Iterators.filter(itersTransformWithRemoved(iterators), i -> !i.isRemoved());
+    static Iterator<Item> limitBySize(final Iterator<Item> items, final long maxBytes) {
+        return new AbstractIterator<>() {
+            private long size;
+
+            @Override
+            protected Item computeNext() {
+                if (size >= maxBytes || !items.hasNext()) {
+                    return endOfData();
+                }
+                final Item item = items.next();
+                size += item.getSizeInBytes();
+                return item;
+            }
+        };
     }
 
-    static Iterator<Item> itersTransformWithRemoved(final Collection<Iterator<Item>> iterators) {
-        final Iterator<Item> mergedIter = Iterators.mergeSorted(iterators, Item.COMPARATOR);
-        return Iters.collapseEquals(mergedIter, Item::getKey);
+    /**
+     * Returns a view of items which keys are less than given bound.
+     *
+     * @param items source iterator
+     * @param to    exclusive bound, {@code null} means no bound
+     * @return iterator over a part of items
+     */
+    static Iterator<Item> until(final Iterator<Item> items, @Nullable final ByteBuffer to) {
+        if (to == null) {
+            return items;
+        }
+        return new AbstractIterator<>() {
+            @Override
+            protected Item computeNext() {
+                if (!items.hasNext()) {
+                    return endOfData();
+                }
+                final Item item = items.next();
+                return Keys.compare(item.getKey(), to) < 0 ? item : endOfData();
+            }
+        };
     }
 }
@@ -0,0 +1,31 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Order of keys in an SSTable, stored in its footer since {@link SSTableFooter#KEY_ORDER_VERSION}.
+ * Older tables are in {@link #SIGNED} order as well. A table in an order this storage doesn't compare keys in
+ * can't be searched or merged with others, so it is rejected like a table of unknown format version.
+ */
+enum KeyOrder {
+    /**
+     * Lexicographic order of signed bytes implemented by {@link Keys}.
+     */
+    SIGNED;
+
+    /**
+     * Returns order stored with given id.
+     *
+     * @param id stored id
+     * @return order
+     * @throws IllegalArgumentException if order is unknown
+     */
+    static KeyOrder of(final int id) {
+        Preconditions.checkArgument(id >= 0 && id < values().length, "Unknown key order %s", id);
+        return values()[id];
+    }
+
+    int getId() {
+        return ordinal();
+    }
+}
@@ -0,0 +1,117 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Comparator of keys, the only place where their order is defined, see {@link KeyOrder}.
+ * Keys are ordered lexicographically by <b>signed</b> bytes, a key which is a prefix of another one goes first.
+ * It is the order of {@link ByteBuffer#compareTo(ByteBuffer)} which {@link ru.mail.polis.dao.DAO} promises
+ * for iteration, so records come out of storage in the same order as from any map keyed by buffers.
+ * Keys are compared 8 bytes at a time: arrays by {@link Arrays#compare}, buffers by big-endian words
+ * with sign bits of all bytes flipped, so an unsigned comparison of words orders bytes as signed.
+ * Only the sign of a comparison result is meaningful.
+ */
+final class Keys {
+    static final Comparator<ByteBuffer> COMPARATOR = Keys::compare;
+
+    private static final long SIGN_BITS = 0x8080808080808080L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private Keys() {
+    }
+
+    /**
+     * Compares remaining bytes of two keys.
+     */
+    static int compare(@NotNull final ByteBuffer left, @NotNull final ByteBuffer right) {
+        return compare(left, left.position(), left.remaining(), right);
+    }
+
+    /**
+     * Compares key stored in an array with remaining bytes of another key.
+     */
+    static int compare(final byte[] bytes, final int offset, final int length, final ByteBuffer key) {
+        final int keyPosition = key.position();
+        final int keyLength = key.remaining();
+        if (key.hasArray()) {
+            final int from = key.arrayOffset() + keyPosition;
+            return Arrays.compare(bytes, offset, offset + length, key.array(), from, from + keyLength);
+        }
+        final int common = Math.min(length, keyLength);
+        int i = 0;
+        for (; i + Long.BYTES <= common; i += Long.BYTES) {
+            final long word = (long) LONGS.get(bytes, offset + i);
+            final long keyWord = word(key, keyPosition + i);
+            if (word != keyWord) {
+                return Long.compareUnsigned(word ^ SIGN_BITS, keyWord ^ SIGN_BITS);
+            }
+        }
+        for (; i < common; i++) {
+            final int compare = Byte.compare(bytes[offset + i], key.get(keyPosition + i));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - keyLength;
+    }
+
+    /**
+     * Compares key stored in a buffer region with remaining bytes of another key.
+     */
+    static int compare(final ByteBuffer buffer, final int offset, final int length, final ByteBuffer key) {
+        if (buffer.hasArray()) {
+            return compare(buffer.array(), buffer.arrayOffset() + offset, length, key);
+        }
+        final int keyPosition = key.position();
+        final int keyLength = key.remaining();
+        final int common = Math.min(length, keyLength);
+        int i = 0;
+        for (; i + Long.BYTES <= common; i += Long.BYTES) {
+            final long word = word(buffer, offset + i);
+            final long keyWord = word(key, keyPosition + i);
+            if (word != keyWord) {
+                return Long.compareUnsigned(word ^ SIGN_BITS, keyWord ^ SIGN_BITS);
+            }
+        }
+        for (; i < common; i++) {
+            final int compare = Byte.compare(buffer.get(offset + i), key.get(keyPosition + i));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return length - keyLength;
+    }
+
+    /**
+     * Reads 8 bytes as a big-endian word whatever order the buffer has.
+     */
+    private static long word(final ByteBuffer buffer, final int index) {
+        final long word = buffer.getLong(index);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? word : Long.reverseBytes(word);
+    }
+
+    /**
+     * Returns length of the common prefix of two keys.
+     */
+    static int commonPrefix(final byte[] bytes, final int length, final ByteBuffer key) {
+        final int keyPosition = key.position();
+        final int common = Math.min(length, key.remaining());
+        if (key.hasArray()) {
+            final int from = key.arrayOffset() + keyPosition;
+            final int mismatch = Arrays.mismatch(bytes, 0, common, key.array(), from, from + common);
+            return mismatch < 0 ? common : mismatch;
+        }
+        int prefix = 0;
+        while (prefix < common && bytes[prefix] == key.get(keyPosition + prefix)) {
+            prefix++;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps tables in levels like LevelDB does.
+ * Flushed tables form level 0 where key ranges may overlap. Levels from 1 to {@link #MAX_LEVEL}
+ * consist of tables of about target size with disjoint key ranges, every level may hold
+ * {@link #LEVEL_SIZE_MULTIPLIER} times more data than the previous one.
+ * A table is merged into the overlapping tables of the next level, a table which overlaps nothing
+ * is moved there without rewriting. So a point read checks at most one table per level beyond level 0.
+ */
+final class LeveledCompactionStrategy implements CompactionStrategy {
+    static final int MAX_LEVEL = 7;
+    private static final int LEVEL_SIZE_MULTIPLIER = 10;
+
+    private final int level0Threshold;
+    private final long targetTableSize;
+
+    /**
+     * Creates strategy.
+     *
+     * @param level0Threshold amount of level 0 tables which triggers their compaction
+     * @param targetTableSize size of tables at levels 1 and deeper
+     */
+    LeveledCompactionStrategy(final int level0Threshold, final long targetTableSize) {
+        Preconditions.checkArgument(level0Threshold >= 1 && targetTableSize > 0);
+        this.level0Threshold = level0Threshold;
+        this.targetTableSize = targetTableSize;
+    }
+
+    @Nullable
+    @Override
+    public CompactionTask select(@NotNull final List<SSTable> tables) {
+        final List<List<SSTable>> levels = levels(tables);
+        final List<SSTable> level0 = levels.get(0);
+        if (level0.size() >= level0Threshold) {
+            // Output covers the whole range of level 0, so it is compared with tables of level 1 at once
+            final KeyRange range = KeyRange.of(level0);
+            final List<SSTable> inputs = new ArrayList<>(level0);
+            for (final SSTable table : levels.get(1)) {
+                if (range.overlaps(table.getMetadata())) {
+                    inputs.add(table);
+                }
+            }
+            return merge(inputs, 1, tables);
+        }
+        int bestLevel = 0;
+        double bestScore = 1;
+        long maxLevelSize = targetTableSize * LEVEL_SIZE_MULTIPLIER;
+        for (int level = 1; level < MAX_LEVEL; level++) {
+            final double score = (double) sizeOf(levels.get(level)) / maxLevelSize;
+            if (score > bestScore) {
+                bestScore = score;
+                bestLevel = level;
+            }
+            maxLevelSize *= LEVEL_SIZE_MULTIPLIER;
+        }
+        if (bestLevel == 0) {
+            return null;
+        }
+        return compactLevel(bestLevel, levels, tables);
+    }
+
+    /**
+     * Pushes the oldest table of given level down, data which stays at a level longer goes first.
+     */
+    private CompactionTask compactLevel(final int level,
+                                        final List<List<SSTable>> levels,
+                                        final List<SSTable> tables) {
+        SSTable oldest = null;
+        for (final SSTable table : levels.get(level)) {
+            if (oldest == null || table.getMaxTimeStamp() < oldest.getMaxTimeStamp()) {
+                oldest = table;
+            }
+        }
+        final List<SSTable> inputs = new ArrayList<>();
+        inputs.add(oldest);
+        for (final SSTable table : levels.get(level + 1)) {
+            if (table.getMetadata().overlaps(oldest.getMetadata())) {
+                inputs.add(table);
+            }
+        }
+        if (inputs.size() == 1) {
+            return CompactionTask.move(oldest, level + 1);
+        }
+        return merge(inputs, level + 1, tables);
+    }
+
+    /**
+     * Merges everything into the deepest level in use, so no tombstone can shadow anything afterwards.
+     */
+    @NotNull
+    @Override
+    public CompactionTask selectAll(@NotNull final List<SSTable> tables) {
+        int level = 1;
+        for (final SSTable table : tables) {
+            level = Math.max(level, levelOf(table));
+        }
+        return CompactionTask.merge(tables, level, true, targetTableSize);
+    }
+
+    /**
+     * Tombstones are needed only while another table may have older versions of their keys.
+     * Normally such tables are at deeper levels, but level 0 may also keep old data after switch of strategy.
+     */
+    private CompactionTask merge(final List<SSTable> inputs, final int outputLevel, final List<SSTable> tables) {
+        long maxTimeStamp = Long.MIN_VALUE;
+        for (final SSTable input : inputs) {
+            maxTimeStamp = Math.max(maxTimeStamp, input.getMaxTimeStamp());
+        }
+        final KeyRange range = KeyRange.of(inputs);
+        boolean dropTombstones = true;
+        for (final SSTable table : tables) {
+            if (!inputs.contains(table)
+                    && table.getMetadata().getMinTimeStamp() < maxTimeStamp
+                    && range.overlaps(table.getMetadata())) {
+                dropTombstones = false;
+                break;
+            }
+        }
+        return CompactionTask.merge(inputs, outputLevel, dropTombstones, targetTableSize);
+    }
+
+    private static List<List<SSTable>> levels(final List<SSTable> tables) {
+        final List<List<SSTable>> levels = new ArrayList<>(MAX_LEVEL + 1);
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            levels.add(new ArrayList<>());
+        }
+        for (final SSTable table : tables) {
+            levels.get(levelOf(table)).add(table);
+        }
+        return levels;
+    }
+
+    private static int levelOf(final SSTable table) {
+        return Math.min(table.getLevel(), MAX_LEVEL);
+    }
+
+    private static long sizeOf(final List<SSTable> tables) {
+        long size = 0;
+        for (final SSTable table : tables) {
+            size += table.sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Smallest key range containing given tables, {@code null} bound means unknown and so unbounded.
+     */
+    private static final class KeyRange {
+        @Nullable
+        private final ByteBuffer min;
+        @Nullable
+        private final ByteBuffer max;
+        private final boolean empty;
+
+        private KeyRange(@Nullable final ByteBuffer min, @Nullable final ByteBuffer max, final boolean empty) {
+            this.min = min;
+            this.max = max;
+            this.empty = empty;
+        }
+
+        static KeyRange of(final List<SSTable> tables) {
+            ByteBuffer min = null;
+            ByteBuffer max = null;
+            boolean minKnown = true;
+            boolean maxKnown = true;
+            boolean empty = true;
+            for (final SSTable table : tables) {
+                final TableMetadata metadata = table.getMetadata();
+                if (metadata.getRecordsAmount() == 0) {
+                    continue;
+                }
+                empty = false;
+                final ByteBuffer tableMin = metadata.getMinKey();
+                final ByteBuffer tableMax = metadata.getMaxKey();
+                minKnown &= tableMin != null;
+                maxKnown &= tableMax != null;
+                if (minKnown && (min == null || Keys.compare(tableMin, min) < 0)) {
+                    min = tableMin;
+                }
+                if (maxKnown && (max == null || Keys.compare(tableMax, max) > 0)) {
+                    max = tableMax;
+                }
+            }
+            return new KeyRange(minKnown ? min : null, maxKnown ? max : null, empty);
+        }
+
+        boolean overlaps(final TableMetadata metadata) {
+            if (empty || metadata.getRecordsAmount() == 0) {
+                return false;
+            }
+            final ByteBuffer tableMin = metadata.getMinKey();
+            final ByteBuffer tableMax = metadata.getMaxKey();
+            return (max == null || tableMin == null || Keys.compare(tableMin, max) <= 0)
+                    && (min == null || tableMax == null || Keys.compare(tableMax, min) >= 0);
+        }
+    }
+}
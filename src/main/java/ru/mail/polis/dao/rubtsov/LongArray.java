@@ -0,0 +1,30 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive longs.
+ */
+final class LongArray {
+    private long[] values;
+    private int size;
+
+    LongArray(final int initialCapacity) {
+        this.values = new long[initialCapacity];
+    }
+
+    void add(final long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size * 2));
+        }
+        values[size++] = value;
+    }
+
+    long get(final int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,153 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Pure Java codec using LZ4 block layout.
+ * Input is split into sequences of [token][literals][match offset][match length],
+ * token keeps 4 bits of literals length and 4 bits of match length, longer lengths continue
+ * with extra bytes. The last sequence has literals only.
+ * Matches are found greedily with a single entry hash table, which is fast and good enough for blocks.
+ */
+final class Lz4Codec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int RUN_MASK = 0xF;
+
+    private Lz4Codec() {
+    }
+
+    static int maxCompressedSize(final int size) {
+        return size + size / 255 + 16;
+    }
+
+    /**
+     * Compresses given bytes.
+     *
+     * @param src    source array
+     * @param srcLen amount of bytes to compress
+     * @param dst    array of at least {@link #maxCompressedSize(int)} bytes
+     * @return compressed size
+     */
+    static int compress(final byte[] src, final int srcLen, final byte[] dst) {
+        final int[] table = new int[1 << HASH_LOG];
+        final int matchLimit = srcLen - LAST_LITERALS;
+        int anchor = 0;
+        int position = 0;
+        int out = 0;
+        while (position + MIN_MATCH <= matchLimit) {
+            final int sequence = readInt(src, position);
+            final int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+            final int candidate = table[hash] - 1;
+            table[hash] = position + 1;
+            if (candidate < 0 || position - candidate > MAX_OFFSET || readInt(src, candidate) != sequence) {
+                position++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchLimit && src[candidate + matchLength] == src[position + matchLength]) {
+                matchLength++;
+            }
+            dst[out++] = token(position - anchor, matchLength - MIN_MATCH);
+            out = writeLiterals(src, anchor, position - anchor, dst, out);
+            final int offset = position - candidate;
+            dst[out++] = (byte) offset;
+            dst[out++] = (byte) (offset >>> 8);
+            if (matchLength - MIN_MATCH >= RUN_MASK) {
+                out = writeLength(matchLength - MIN_MATCH - RUN_MASK, dst, out);
+            }
+            position += matchLength;
+            anchor = position;
+        }
+        dst[out++] = token(srcLen - anchor, 0);
+        return writeLiterals(src, anchor, srcLen - anchor, dst, out);
+    }
+
+    private static byte token(final int literals, final int matchLength) {
+        return (byte) (Math.min(literals, RUN_MASK) << 4 | Math.min(matchLength, RUN_MASK));
+    }
+
+    private static int writeLiterals(final byte[] src,
+                                     final int from,
+                                     final int length,
+                                     final byte[] dst,
+                                     final int position) {
+        int out = position;
+        if (length >= RUN_MASK) {
+            out = writeLength(length - RUN_MASK, dst, out);
+        }
+        System.arraycopy(src, from, dst, out, length);
+        return out + length;
+    }
+
+    private static int writeLength(final int length, final byte[] dst, final int position) {
+        int out = position;
+        int remaining = length;
+        while (remaining >= 0xFF) {
+            dst[out++] = (byte) 0xFF;
+            remaining -= 0xFF;
+        }
+        dst[out++] = (byte) remaining;
+        return out;
+    }
+
+    /**
+     * Restores bytes compressed by {@link #compress(byte[], int, byte[])}.
+     *
+     * @param src    compressed bytes
+     * @param srcOff position of compressed bytes in source array
+     * @param srcLen amount of compressed bytes
+     * @param dst    array to fill, its length should be equal to original size
+     * @throws IllegalArgumentException if data is corrupted
+     */
+    static void decompress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst) {
+        final int end = srcOff + srcLen;
+        int position = srcOff;
+        int out = 0;
+        while (position < end) {
+            final int token = src[position++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int next;
+                do {
+                    next = src[position++] & 0xFF;
+                    literals += next;
+                } while (next == 0xFF);
+            }
+            Preconditions.checkArgument(position + literals <= end && out + literals <= dst.length,
+                    "Corrupted block");
+            System.arraycopy(src, position, dst, out, literals);
+            position += literals;
+            out += literals;
+            if (position >= end) {
+                break;
+            }
+            final int offset = (src[position++] & 0xFF) | (src[position++] & 0xFF) << 8;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int next;
+                do {
+                    next = src[position++] & 0xFF;
+                    matchLength += next;
+                } while (next == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+            Preconditions.checkArgument(offset > 0 && offset <= out && out + matchLength <= dst.length,
+                    "Corrupted block");
+            // Byte by byte copy as match may overlap bytes it produces
+            for (int i = 0; i < matchLength; i++, out++) {
+                dst[out] = dst[out - offset];
+            }
+        }
+        Preconditions.checkArgument(out == dst.length, "Corrupted block");
+    }
+
+    private static int readInt(final byte[] src, final int position) {
+        return (src[position] & 0xFF)
+                | (src[position + 1] & 0xFF) << 8
+                | (src[position + 2] & 0xFF) << 16
+                | (src[position + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,226 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes of the table set, it lists live tables without scanning data directory.
+ * Every change of {@link TableSet} is a single record, so it is applied atomically on replay:
+ * [payload size][CRC32 of payload][edits amount][edit] * n times.
+ * An edit is [type][name size][name] followed by [level][min timestamp][max timestamp] for added tables.
+ * A record broken at the end of file is a change interrupted by crash and is ignored,
+ * any other broken record means the manifest is corrupted.
+ * Log is rewritten as a snapshot of live tables on open and when it grows too large.
+ */
+final class Manifest implements Closeable {
+    static final String FILE_NAME = "MANIFEST";
+    private static final String TEMP_FILE_NAME = FILE_NAME + SSTable.TEMP_FILE_EXTENSTION;
+    private static final byte ADDED = 1;
+    private static final byte REMOVED = 2;
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final long MAX_SIZE = 4 * 1024 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+
+    private Manifest(final Path path) throws IOException {
+        this.path = path;
+        this.channel = openForAppend(path);
+    }
+
+    private static FileChannel openForAppend(final Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes a snapshot of given tables and opens it for appending changes.
+     *
+     * @param dir    data directory
+     * @param tables live tables
+     * @return manifest
+     * @throws IOException if manifest can't be written
+     */
+    static Manifest create(@NotNull final Path dir, @NotNull final Collection<SSTable> tables) throws IOException {
+        final Path path = dir.resolve(FILE_NAME);
+        writeSnapshot(path, tables);
+        return new Manifest(path);
+    }
+
+    /**
+     * Replays manifest of data directory.
+     *
+     * @param dir data directory
+     * @return live tables by name in order of addition or {@code null} if there is no manifest
+     * @throws IOException              if manifest can't be read
+     * @throws IllegalArgumentException if manifest is corrupted
+     */
+    @Nullable
+    static Map<String, Entry> replay(@NotNull final Path dir) throws IOException {
+        final Path path = dir.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        final ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(path));
+        final Map<String, Entry> tables = new LinkedHashMap<>();
+        while (log.remaining() >= HEADER_SIZE) {
+            final int size = log.getInt();
+            final int checksum = log.getInt();
+            if (size < 0 || size > log.remaining()) {
+                break;
+            }
+            final ByteBuffer record = log.slice().limit(size);
+            log.position(log.position() + size);
+            if (checksum(record) != checksum) {
+                Preconditions.checkArgument(!log.hasRemaining(), "Corrupted manifest %s", path);
+                break;
+            }
+            apply(record, tables);
+        }
+        return tables;
+    }
+
+    private static void apply(final ByteBuffer record, final Map<String, Entry> tables) {
+        final int edits = record.getInt();
+        for (int i = 0; i < edits; i++) {
+            final byte type = record.get();
+            final byte[] name = new byte[record.getInt()];
+            record.get(name);
+            final String tableName = new String(name, StandardCharsets.UTF_8);
+            if (type == ADDED) {
+                tables.put(tableName, new Entry(tableName, record.getInt(), record.getLong(), record.getLong()));
+            } else {
+                Preconditions.checkArgument(type == REMOVED, "Unknown manifest edit %s", type);
+                tables.remove(tableName);
+            }
+        }
+    }
+
+    /**
+     * Durably appends a change of the table set.
+     *
+     * @param removed tables removed from the set
+     * @param added   tables added to the set
+     * @param current tables of the set after the change, they are written as a snapshot if log is too large
+     * @throws IOException if change can't be written
+     */
+    synchronized void record(@NotNull final Collection<SSTable> removed,
+                             @NotNull final Collection<SSTable> added,
+                             @NotNull final Collection<SSTable> current) throws IOException {
+        if (channel.size() > MAX_SIZE) {
+            writeSnapshot(path, current);
+            // The old channel refers to the replaced file
+            channel.close();
+            channel = openForAppend(path);
+            return;
+        }
+        final ByteBuffer record = encode(removed, added);
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+    }
+
+    private static void writeSnapshot(final Path path, final Collection<SSTable> tables) throws IOException {
+        final Path temp = path.resolveSibling(TEMP_FILE_NAME);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer record = encode(Collections.emptyList(), tables);
+            while (record.hasRemaining()) {
+                out.write(record);
+            }
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer encode(final Collection<SSTable> removed, final Collection<SSTable> added) {
+        int size = Integer.BYTES;
+        for (final SSTable table : removed) {
+            size += Byte.BYTES + Integer.BYTES + name(table).length;
+        }
+        for (final SSTable table : added) {
+            size += Byte.BYTES + Integer.BYTES + name(table).length + Integer.BYTES + Long.BYTES * 2;
+        }
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + size);
+        record.position(HEADER_SIZE);
+        record.putInt(removed.size() + added.size());
+        for (final SSTable table : removed) {
+            final byte[] name = name(table);
+            record.put(REMOVED).putInt(name.length).put(name);
+        }
+        for (final SSTable table : added) {
+            final byte[] name = name(table);
+            record.put(ADDED).putInt(name.length).put(name)
+                    .putInt(table.getLevel())
+                    .putLong(table.getMinTimeStamp())
+                    .putLong(table.getMaxTimeStamp());
+        }
+        record.flip();
+        final int checksum = checksum(record.duplicate().position(HEADER_SIZE));
+        return record.putInt(0, size).putInt(Integer.BYTES, checksum);
+    }
+
+    private static byte[] name(final SSTable table) {
+        return table.getUniqueID().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(final ByteBuffer payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Live table as recorded in manifest, timestamps bound its items like sequence numbers.
+     */
+    static final class Entry {
+        private final String name;
+        private final int level;
+        private final long minTimeStamp;
+        private final long maxTimeStamp;
+
+        Entry(final String name, final int level, final long minTimeStamp, final long maxTimeStamp) {
+            this.name = name;
+            this.level = level;
+            this.minTimeStamp = minTimeStamp;
+            this.maxTimeStamp = maxTimeStamp;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getLevel() {
+            return level;
+        }
+
+        long getMinTimeStamp() {
+            return minTimeStamp;
+        }
+
+        long getMaxTimeStamp() {
+            return maxTimeStamp;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only memory mapping of a file of any size.
+ * A single mapping can't exceed 2 GiB, so the file is mapped as a sequence of segments
+ * and all positions are {@code long}. Regions crossing a segment boundary are copied into heap,
+ * which happens to at most one block per boundary.
+ */
+final class MappedFile implements FileRegions {
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final ByteBuffer[] segments;
+    private final long segmentSize;
+    private final long size;
+
+    private MappedFile(final ByteBuffer[] segments, final long segmentSize, final long size) {
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.size = size;
+    }
+
+    /**
+     * Maps the whole file, mapping stays valid after channel is closed.
+     *
+     * @param fileChannel channel of file
+     * @return mapping
+     * @throws IOException if file can't be mapped
+     */
+    static MappedFile map(final FileChannel fileChannel) throws IOException {
+        return map(fileChannel, MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * Maps the whole file by segments of given size, small segments make boundaries testable.
+     *
+     * @param fileChannel channel of file
+     * @param segmentSize size of a segment, at most 2 GiB
+     * @return mapping
+     * @throws IOException if file can't be mapped
+     */
+    static MappedFile map(final FileChannel fileChannel, final long segmentSize) throws IOException {
+        Preconditions.checkArgument(segmentSize > 0 && segmentSize <= MAX_SEGMENT_SIZE, "Invalid segment size");
+        final long size = fileChannel.size();
+        final ByteBuffer[] segments = new ByteBuffer[Math.toIntExact((size + segmentSize - 1) / segmentSize)];
+        for (int i = 0; i < segments.length; i++) {
+            final long position = i * segmentSize;
+            segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(segmentSize, size - position));
+        }
+        return new MappedFile(segments, segmentSize, size);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns read only view of file region.
+     *
+     * @param position start of region
+     * @param limit    end of region exclusive
+     * @return buffer with region contents
+     * @throws IllegalArgumentException if region is out of file bounds or larger than 2 GiB
+     */
+    @Override
+    public ByteBuffer region(final long position, final long limit) {
+        Preconditions.checkArgument(0 <= position && position <= limit && limit <= size
+                && limit - position <= Integer.MAX_VALUE, "Region [%s, %s) is out of file", position, limit);
+        final int length = (int) (limit - position);
+        final int offset = (int) (position % segmentSize);
+        if (length == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        if (offset + (long) length <= segmentSize) {
+            return part(position, length);
+        }
+        final ByteBuffer copy = ByteBuffer.allocate(length);
+        long current = position;
+        while (copy.hasRemaining()) {
+            final int chunk = (int) Math.min(copy.remaining(), segmentSize - current % segmentSize);
+            copy.put(part(current, chunk));
+            current += chunk;
+        }
+        return copy.flip().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer part(final long position, final int length) {
+        final int offset = (int) (position % segmentSize);
+        return segments[(int) (position / segmentSize)].duplicate()
+                .position(offset)
+                .limit(offset + length)
+                .slice()
+                .asReadOnlyBuffer();
+    }
+}
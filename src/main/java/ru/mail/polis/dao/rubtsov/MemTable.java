@@ -1,8 +1,10 @@
 package ru.mail.polis.dao.rubtsov;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.UUID;
@@ -11,24 +13,49 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Part of storage located in RAM.
+ * Items are kept on heap or copied into {@link MemoryArena}, then only the index of items stays on heap.
+ * Reads of an arena pin it and copy items they return to heap, the arena is freed by {@link #release()}
+ * once the table is flushed and the last of such reads is done.
  */
 public final class MemTable implements Table {
+    // Heap footprint of an index entry: skip list node and index, item and views of its key and value
+    private static final int INDEX_ENTRY_SIZE = 192;
 
     private final SortedMap<ByteBuffer, Item> data;
     private final String uniqueID;
+    private final long generation;
     private final AtomicLong sizeInBytes = new AtomicLong();
+    @Nullable
+    private final MemoryArena arena;
+
+    /**
+     * Creates a new RAM-storage keeping items on heap.
+     *
+     * @param generation sequence number of the table in its pool, greater for newer tables
+     */
+    MemTable(final long generation) {
+        this(generation, null);
+    }
 
     /**
      * Creates a new RAM-storage.
+     *
+     * @param generation sequence number of the table in its pool, greater for newer tables
+     * @param arena      off-heap memory for keys and values or {@code null} to keep them on heap
      */
-    MemTable() {
-        data = new ConcurrentSkipListMap<>();
+    MemTable(final long generation, @Nullable final MemoryArena arena) {
+        data = new ConcurrentSkipListMap<>(Keys.COMPARATOR);
         uniqueID = UUID.randomUUID().toString();
+        this.generation = generation;
+        this.arena = arena;
     }
 
     @Override
     public Iterator<Item> iterator(@NotNull final ByteBuffer from) {
-        return data.tailMap(from).values().iterator();
+        if (arena == null) {
+            return data.tailMap(from).values().iterator();
+        }
+        return TableCursors.items(cursor(from));
     }
 
     @Override
@@ -36,6 +63,45 @@ public final class MemTable implements Table {
         return iterator(from);
     }
 
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        if (arena == null) {
+            return TableCursors.of(iterator(from));
+        }
+        if (!arena.retain()) {
+            // Released after flush, so its items are found in SSTables
+            return TableCursors.of(Collections.emptyIterator());
+        }
+        return arena.pin(TableCursors.of(data.tailMap(from).values().iterator()));
+    }
+
+    /**
+     * Returns cursor over items in place, they refer to arena memory if the table has one.
+     * The table should not be released until the cursor is done, as the flusher doesn't.
+     *
+     * @return cursor over all items
+     */
+    TableCursor cursorInPlace() {
+        return TableCursors.of(data.values().iterator());
+    }
+
+    @Nullable
+    @Override
+    public Item getLatest(@NotNull final ByteBuffer key) {
+        if (arena == null) {
+            return data.get(key);
+        }
+        if (!arena.retain()) {
+            return null;
+        }
+        try {
+            final Item item = data.get(key);
+            return item == null ? null : MemoryArena.toHeap(item);
+        } finally {
+            arena.release();
+        }
+    }
+
     /**
      * Associates the specified value with the specified key in this map.
      * If the map previously contained a mapping for the key, the old
@@ -46,8 +112,7 @@ public final class MemTable implements Table {
      */
     @Override
     public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) {
-        final Item val = Item.of(key, value);
-        calcNewSize(data.put(key, val), val);
+        put(Item.of(key, value));
     }
 
     /**
@@ -57,13 +122,33 @@ public final class MemTable implements Table {
      */
     @Override
     public void remove(@NotNull final ByteBuffer key) {
-        final Item dead = Item.removed(key);
-        calcNewSize(data.put(key, dead), dead);
+        put(Item.removed(key));
+    }
+
+    /**
+     * Puts the item replacing any item with the same key.
+     *
+     * @param item value or tombstone
+     */
+    void put(@NotNull final Item item) {
+        if (arena == null) {
+            calcNewSize(data.put(item.getKey(), item), item);
+            return;
+        }
+        final Item copy = arena.copy(item);
+        if (data.put(copy.getKey(), copy) == null) {
+            sizeInBytes.addAndGet(INDEX_ENTRY_SIZE);
+        }
     }
 
+    /**
+     * Returns size of items serialized, or memory taken by the table if items are kept off heap.
+     *
+     * @return size in bytes
+     */
     @Override
     public long sizeInBytes() {
-        return sizeInBytes.get();
+        return arena == null ? sizeInBytes.get() : sizeInBytes.get() + arena.reservedBytes();
     }
 
     private void calcNewSize(final Item previousItem, final Item val) {
@@ -79,4 +164,17 @@ public final class MemTable implements Table {
         return uniqueID;
     }
 
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Drops the reference of the table to its arena, the table should not be read afterwards.
+     */
+    void release() {
+        if (arena != null) {
+            arena.release();
+        }
+    }
+
 }
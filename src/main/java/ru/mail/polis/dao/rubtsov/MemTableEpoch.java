@@ -0,0 +1,96 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memtable with its log segment and count of writers inside.
+ * Writers enter the epoch without locks, once the epoch is sealed they move to the next one,
+ * and the table is flushed only after writers already inside have left.
+ */
+final class MemTableEpoch {
+    private static final int SEALED = 1 << 31;
+
+    private final MemTable table;
+    private final WriteAheadLog log;
+    private final AtomicInteger state = new AtomicInteger();
+    private final AtomicBoolean switching;
+
+    /**
+     * Creates an epoch open for writers.
+     *
+     * @param table     table taking writes
+     * @param log       log segment of the table
+     * @param switching whether the epoch is created already claimed for switching,
+     *                  so it is not switched before the previous one is handed off
+     */
+    MemTableEpoch(@NotNull final MemTable table, @NotNull final WriteAheadLog log, final boolean switching) {
+        this.table = table;
+        this.log = log;
+        this.switching = new AtomicBoolean(switching);
+    }
+
+    MemTable getTable() {
+        return table;
+    }
+
+    WriteAheadLog getLog() {
+        return log;
+    }
+
+    long getGeneration() {
+        return table.getGeneration();
+    }
+
+    /**
+     * Registers a writer unless the epoch is sealed.
+     *
+     * @return whether the writer may write to the table
+     */
+    boolean enter() {
+        while (true) {
+            final int current = state.get();
+            if ((current & SEALED) != 0) {
+                return false;
+            }
+            if (state.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void exit() {
+        state.decrementAndGet();
+    }
+
+    /**
+     * Stops admitting writers, writers already inside may still write.
+     */
+    void seal() {
+        state.updateAndGet(current -> current | SEALED);
+    }
+
+    /**
+     * Waits until writers inside the sealed epoch leave, they only append to log and table.
+     */
+    void awaitWriters() {
+        while ((state.get() & ~SEALED) != 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Claims the right to replace this epoch, only one writer wins it.
+     *
+     * @return whether the caller should switch the epoch
+     */
+    boolean claimSwitch() {
+        return switching.compareAndSet(false, true);
+    }
+
+    void releaseSwitch() {
+        switching.set(false);
+    }
+}
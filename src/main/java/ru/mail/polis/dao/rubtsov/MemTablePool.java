@@ -1,148 +1,324 @@
 package ru.mail.polis.dao.rubtsov;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableMap;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Current table taking writes and tables waiting for flush.
+ * Every table has its segment of write-ahead log, which is removed once the table is flushed,
+ * segments left by crash are replayed on start.
+ * Writers take no locks: the current table is switched by replacing {@link MemTableEpoch},
+ * a table is published as pending before the switch, so readers never miss it.
+ * Written keys are invalidated in {@link RowCache}.
+ */
 public class MemTablePool implements Table, Closeable {
-    private final NavigableMap<String, Table> pendingFlush;
+    private final NavigableMap<Long, Table> pendingFlush;
+    private final NavigableMap<Long, MemTableEpoch> epochs = new ConcurrentSkipListMap<>();
     private final BlockingQueue<TableToFlush> flushQueue;
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final long flushThresholdInBytes;
+    private volatile long flushThresholdInBytes;
     private final AtomicBoolean stopFlag = new AtomicBoolean();
-    private MemTable currentMemTable;
+    private final Path dir;
+    private final DAOConfig.WalSyncPolicy syncPolicy;
+    // Chunks of arenas of flushed tables are reused, null if items are kept on heap
+    @Nullable
+    private final MemoryArena.ChunkPool chunkPool;
+    private final Logger logger = LoggerFactory.getLogger(MemTablePool.class);
+    @Nullable
+    private final ScheduledExecutorService syncer;
+    private final AtomicReference<MemTableEpoch> current;
+    private final RowCache rowCache;
 
-    MemTablePool(final long flushThresholdInBytes) {
+    /**
+     * Creates pool with a new table, writes logged by previous run are replayed into it.
+     *
+     * @param flushThresholdInBytes size of the current table which makes it flushed
+     * @param dir                   data directory
+     * @param config                storage parameters
+     * @param rowCache              cache of items read from SSTables
+     * @throws IOException if log can't be replayed or created
+     */
+    MemTablePool(final long flushThresholdInBytes,
+                 @NotNull final Path dir,
+                 @NotNull final DAOConfig config,
+                 @NotNull final RowCache rowCache) throws IOException {
         this.flushThresholdInBytes = flushThresholdInBytes;
-        currentMemTable = new MemTable();
+        this.rowCache = rowCache;
+        this.dir = dir;
+        this.syncPolicy = config.getWalSyncPolicy();
+        this.chunkPool = config.getMemTableStorage() == DAOConfig.MemTableStorage.OFF_HEAP
+                ? new MemoryArena.ChunkPool(flushThresholdInBytes)
+                : null;
+        final List<Path> segments = segments(dir);
+        current = new AtomicReference<>(newEpoch(0, false));
+        recover(segments);
         pendingFlush = new ConcurrentSkipListMap<>();
-        flushQueue = new ArrayBlockingQueue<>(8);
+        // Unbounded, so a switching writer never blocks, tables waiting for flush are limited by write stalls
+        flushQueue = new LinkedBlockingQueue<>();
+        if (syncPolicy == DAOConfig.WalSyncPolicy.PERIODIC) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "wal-sync"));
+            syncer.scheduleWithFixedDelay(this::syncLogs, config.getWalSyncPeriod(), config.getWalSyncPeriod(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    private static List<Path> segments(final Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(WriteAheadLog::isSegment).collect(Collectors.toList());
+        }
+    }
+
+    private MemTableEpoch newEpoch(final long generation, final boolean switching) throws IOException {
+        final MemTable table = new MemTable(generation, chunkPool == null ? null : new MemoryArena(chunkPool));
+        final WriteAheadLog log = WriteAheadLog.create(dir, table.getUniqueID(),
+                syncPolicy == DAOConfig.WalSyncPolicy.EVERY_WRITE);
+        final MemTableEpoch epoch = new MemTableEpoch(table, log, switching);
+        epochs.put(generation, epoch);
+        return epoch;
+    }
+
+    /**
+     * Replays segments left by previous run into the current table, the newest version of a key wins.
+     * The items are logged again and synced, so the old segments are removed.
+     */
+    private void recover(final List<Path> segments) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        final MemTable table = current.get().getTable();
+        final WriteAheadLog log = current.get().getLog();
+        for (final Path segment : segments) {
+            for (final Item item : WriteAheadLog.replay(segment)) {
+                final Item latest = table.getLatest(item.getKey());
+                if (latest == null || latest.getTimeStampAbs() < item.getTimeStampAbs()) {
+                    table.put(item);
+                }
+            }
+        }
+        final Iterator<Item> items = table.iterator(ByteBuffer.allocate(0));
+        while (items.hasNext()) {
+            log.append(items.next());
+        }
+        log.sync();
+        for (final Path segment : segments) {
+            Files.delete(segment);
+        }
+        logger.info("{} log segments replayed, {} bytes recovered", segments.size(), table.sizeInBytes());
+    }
+
+    private void syncLogs() {
+        for (final MemTableEpoch epoch : epochs.values()) {
+            try {
+                epoch.getLog().sync();
+            } catch (IOException e) {
+                logger.error("Can't sync write-ahead log", e);
+            }
+        }
     }
 
     @Override
     public long sizeInBytes() {
-        readWriteLock.readLock().lock();
-        try {
-            long sizeInBytes = currentMemTable.sizeInBytes();
-            for (final Table table :
-                    pendingFlush.values()) {
-                sizeInBytes += table.sizeInBytes();
-            }
-            return sizeInBytes;
-        } finally {
-            readWriteLock.readLock().unlock();
+        long sizeInBytes = current.get().getTable().sizeInBytes();
+        for (final Table table : pendingFlush.values()) {
+            sizeInBytes += table.sizeInBytes();
         }
+        return sizeInBytes;
     }
 
     public int size() {
         return pendingFlush.size() + 1;
     }
 
+    long getFlushThreshold() {
+        return flushThresholdInBytes;
+    }
+
+    /**
+     * Changes size of the current table which makes it flushed, the current table is checked on the next write.
+     *
+     * @param flushThresholdInBytes size in bytes
+     */
+    void setFlushThreshold(final long flushThresholdInBytes) {
+        this.flushThresholdInBytes = flushThresholdInBytes;
+    }
+
+    long pendingBytes() {
+        long sizeInBytes = 0;
+        for (final Table table : pendingFlush.values()) {
+            sizeInBytes += table.sizeInBytes();
+        }
+        return sizeInBytes;
+    }
+
     @Override
     public Iterator<Item> iterator(@NotNull final ByteBuffer from) {
-        final Collection<Iterator<Item>> iterators = collectIters(from);
-        return IteratorUtils.itersTransformWithoutRemoved(iterators);
+        return TableCursors.items(TableCursors.merge(collectCursors(from), false));
     }
 
     @Override
     public Iterator<Item> latestIterator(@NotNull final ByteBuffer from) {
-        final Collection<Iterator<Item>> iterators = collectIters(from);
-        return IteratorUtils.itersTransformWithRemoved(iterators);
+        return TableCursors.items(cursor(from));
     }
 
-    private Collection<Iterator<Item>> collectIters(@NotNull final ByteBuffer from) {
-        final Collection<Iterator<Item>> iterators;
-        readWriteLock.readLock().lock();
-        try {
-            iterators = new ArrayList<>(pendingFlush.size() + 1);
-            iterators.add(currentMemTable.iterator(from));
-            for (final Table table : pendingFlush.values()) {
-                iterators.add(table.iterator(from));
-            }
-        } finally {
-            readWriteLock.readLock().unlock();
-        }
-        return iterators;
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return TableCursors.merge(collectCursors(from), true);
     }
 
+    /**
+     * Looks for the key in the current table first and then in tables
+     * waiting for flush from the newest to the oldest.
+     *
+     * @param key key to look for
+     * @return the newest item with given key or {@code null} if there is no such key in memory
+     */
+    @Nullable
     @Override
-    public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) {
-        if (stopFlag.get()) {
-            throw new IllegalStateException("Stopped");
+    public Item getLatest(@NotNull final ByteBuffer key) {
+        final Item item = current.get().getTable().getLatest(key);
+        if (item != null) {
+            return item;
         }
-        readWriteLock.readLock().lock();
-        try {
-            currentMemTable.upsert(key, value);
-        } finally {
-            readWriteLock.readLock().unlock();
+        for (final Table table : pendingFlush.descendingMap().values()) {
+            final Item pending = table.getLatest(key);
+            if (pending != null) {
+                return pending;
+            }
         }
-        enqueueFlush();
+        return null;
     }
 
-    @Override
-    public void remove(@NotNull final ByteBuffer key) {
-        if (stopFlag.get()) {
-            throw new IllegalStateException("Stopped");
+    private List<TableCursor> collectCursors(@NotNull final ByteBuffer from) {
+        // The current table goes first, a table switched meanwhile is then found among pending ones
+        final List<TableCursor> cursors = new ArrayList<>(pendingFlush.size() + 1);
+        cursors.add(current.get().getTable().cursor(from));
+        for (final Table table : pendingFlush.descendingMap().values()) {
+            cursors.add(table.cursor(from));
         }
-        readWriteLock.readLock().lock();
+        return cursors;
+    }
+
+    @Override
+    public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) throws IOException {
+        write(Item.of(key, value));
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) throws IOException {
+        write(Item.removed(key));
+    }
+
+    /**
+     * Logs the item and puts it into the current table, then waits for the log according to sync policy.
+     * Log is committed after leaving the epoch, so concurrent writers are committed together
+     * and the epoch may be switched meanwhile.
+     */
+    private void write(@NotNull final Item item) throws IOException {
+        final MemTableEpoch epoch = enter();
+        final long sequence;
         try {
-            currentMemTable.remove(key);
+            sequence = epoch.getLog().append(item);
+            epoch.getTable().put(item);
         } finally {
-            readWriteLock.readLock().unlock();
+            epoch.exit();
+        }
+        // Readers look into memory after taking version of the key, so the table already has the item
+        rowCache.invalidate(item.getKey());
+        epoch.getLog().commit(sequence);
+        if (epoch.getTable().sizeInBytes() > flushThresholdInBytes && epoch.claimSwitch()) {
+            switchEpoch(epoch);
+        }
+    }
+
+    private MemTableEpoch enter() {
+        while (true) {
+            if (stopFlag.get()) {
+                throw new IllegalStateException("Stopped");
+            }
+            final MemTableEpoch epoch = current.get();
+            if (epoch.enter()) {
+                return epoch;
+            }
+            // The epoch is being switched
+            Thread.onSpinWait();
         }
-        enqueueFlush();
     }
 
     @Override
     public String getUniqueID() {
-        return currentMemTable.getUniqueID();
+        return current.get().getTable().getUniqueID();
     }
 
-    private void enqueueFlush() {
-        if (currentMemTable.sizeInBytes() > flushThresholdInBytes) {
-            TableToFlush tableToFlush = null;
-            readWriteLock.writeLock().lock();
-            try {
-                if (currentMemTable.sizeInBytes() > flushThresholdInBytes) {
-                    tableToFlush = new TableToFlush(currentMemTable);
-                    pendingFlush.put(currentMemTable.getUniqueID(), currentMemTable);
-                    currentMemTable = new MemTable();
-                }
-            } finally {
-                readWriteLock.writeLock().unlock();
-            }
-            if (tableToFlush != null) {
-                try {
-                    flushQueue.put(tableToFlush);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
+    /**
+     * Replaces the epoch by a new one and hands its table off for flush without blocking.
+     * The new epoch can't be switched until the handoff is done, so tables are queued in order.
+     */
+    private void switchEpoch(final MemTableEpoch epoch) throws IOException {
+        final MemTableEpoch next;
+        try {
+            next = newEpoch(epoch.getGeneration() + 1, true);
+        } catch (IOException e) {
+            // The current table keeps taking writes
+            epoch.releaseSwitch();
+            throw e;
+        }
+        pendingFlush.put(epoch.getGeneration(), epoch.getTable());
+        current.set(next);
+        epoch.seal();
+        try {
+            flushQueue.add(new TableToFlush(epoch));
+        } finally {
+            next.releaseSwitch();
         }
     }
 
+    /**
+     * Takes the oldest table to flush, writers still inside its epoch have left when it is returned.
+     *
+     * @return table to flush
+     * @throws InterruptedException if interrupted while waiting
+     */
     TableToFlush takeToFlush() throws InterruptedException {
-        return flushQueue.take();
+        final TableToFlush tableToFlush = flushQueue.take();
+        tableToFlush.awaitWriters();
+        return tableToFlush;
     }
 
-    void flushed(final String uniqueID) {
-        readWriteLock.writeLock().lock();
-        try {
-            pendingFlush.remove(uniqueID);
-        } finally {
-            readWriteLock.writeLock().unlock();
+    /**
+     * Drops flushed table and its log, memory of the table is freed once readers which pinned it are done.
+     *
+     * @param generation generation of the table
+     * @throws IOException if log can't be removed
+     */
+    void flushed(final long generation) throws IOException {
+        pendingFlush.remove(generation);
+        final MemTableEpoch epoch = epochs.remove(generation);
+        if (epoch != null) {
+            epoch.getTable().release();
+            epoch.getLog().delete();
         }
     }
 
@@ -151,18 +327,17 @@ public class MemTablePool implements Table, Closeable {
         if (!stopFlag.compareAndSet(false, true)) {
             return;
         }
-        TableToFlush tableToFlush;
-        readWriteLock.writeLock().lock();
-        try {
-            tableToFlush = new TableToFlush(currentMemTable, true);
-        } finally {
-            readWriteLock.writeLock().unlock();
+        if (syncer != null) {
+            syncer.shutdown();
         }
-        try {
-            flushQueue.put(tableToFlush);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        // Waits for a switch in progress, so the last table is queued after all others
+        MemTableEpoch epoch = current.get();
+        while (!epoch.claimSwitch()) {
+            Thread.yield();
+            epoch = current.get();
         }
+        epoch.seal();
+        flushQueue.add(new TableToFlush(epoch, true));
     }
 
 }
@@ -0,0 +1,273 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap memory of one {@link MemTable}, keys and values are copied into large direct chunks
+ * by bump allocation, so heap keeps only the index of the table.
+ * Memory is never freed piecemeal: the arena is reference counted, its table holds one reference
+ * and readers pin it while they read. Once the last reference is released all chunks go back to
+ * {@link ChunkPool} at once and are reused by later tables, so items read from the arena are copied to heap
+ * before they reach clients. Large allocations get buffers of their own which are left to GC.
+ */
+final class MemoryArena {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ChunkPool pool;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicInteger references = new AtomicInteger(1);
+    // Chunks taken from the pool, guarded by this
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    @Nullable
+    private volatile Chunk current;
+
+    MemoryArena(@NotNull final ChunkPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Copies key and value of the item into the arena.
+     *
+     * @param item item with buffers of any kind
+     * @return item with the same timestamp referring to arena memory
+     */
+    @NotNull
+    Item copy(@NotNull final Item item) {
+        return copy(item, allocate(item.getKey().remaining() + item.getValue().remaining()));
+    }
+
+    /**
+     * Copies key and value of an item of the arena to heap, so it stays valid after the arena is released.
+     *
+     * @param item item referring to arena memory
+     * @return item with the same timestamp on heap
+     */
+    @NotNull
+    static Item toHeap(@NotNull final Item item) {
+        return copy(item, ByteBuffer.allocate(item.getKey().remaining() + item.getValue().remaining()));
+    }
+
+    private static Item copy(final Item item, final ByteBuffer memory) {
+        final ByteBuffer key = item.getKey();
+        final ByteBuffer keyCopy = memory.duplicate().limit(key.remaining()).slice().put(key.duplicate()).flip();
+        if (item.isRemoved()) {
+            return Item.of(keyCopy, Item.TOMBSTONE, item.getTimeStamp());
+        }
+        final ByteBuffer valueCopy = memory.position(key.remaining()).slice().put(item.getValue().duplicate()).flip();
+        return Item.of(keyCopy, valueCopy, item.getTimeStamp());
+    }
+
+    private ByteBuffer allocate(final int size) {
+        if (size > pool.chunkSize / 8) {
+            reservedBytes.addAndGet(size);
+            return ByteBuffer.allocateDirect(size);
+        }
+        while (true) {
+            final Chunk chunk = current;
+            if (chunk != null) {
+                final ByteBuffer memory = chunk.allocate(size);
+                if (memory != null) {
+                    return memory;
+                }
+            }
+            synchronized (this) {
+                if (current == chunk) {
+                    final ByteBuffer memory = pool.take();
+                    chunks.add(memory);
+                    reservedBytes.addAndGet(memory.capacity());
+                    current = new Chunk(memory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns off-heap memory taken by the arena, including space of overwritten items.
+     *
+     * @return size in bytes
+     */
+    long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * Pins the arena.
+     *
+     * @return {@code false} if the arena has been released already and can't be read
+     */
+    boolean retain() {
+        while (true) {
+            final int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference and returns chunks to the pool if it was the last one.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            synchronized (this) {
+                current = null;
+                for (final ByteBuffer chunk : chunks) {
+                    pool.give(chunk);
+                }
+                chunks.clear();
+            }
+        }
+    }
+
+    /**
+     * Binds a reference taken by {@link #retain()} to a cursor over arena items.
+     * The reference is released when the cursor is exhausted or, if a reader abandons it, collected by GC.
+     * Keys and timestamps are read in place, materialized items are copied to heap.
+     *
+     * @param cursor cursor over items of this arena
+     * @return cursor over the same items
+     */
+    TableCursor pin(@NotNull final TableCursor cursor) {
+        final AtomicBoolean released = new AtomicBoolean();
+        final Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                release();
+            }
+        };
+        final TableCursor pinned = new PinnedCursor(cursor, release);
+        CLEANER.register(pinned, release);
+        if (!cursor.isValid()) {
+            release.run();
+        }
+        return pinned;
+    }
+
+    private static final class PinnedCursor implements TableCursor {
+        private final TableCursor cursor;
+        private final Runnable release;
+
+        PinnedCursor(final TableCursor cursor, final Runnable release) {
+            this.cursor = cursor;
+            this.release = release;
+        }
+
+        @Override
+        public boolean isValid() {
+            return cursor.isValid();
+        }
+
+        @Override
+        public void next() {
+            cursor.next();
+            if (!cursor.isValid()) {
+                release.run();
+            }
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return cursor.key();
+        }
+
+        @Override
+        public long timeStamp() {
+            return cursor.timeStamp();
+        }
+
+        @Override
+        public int valueSize() {
+            return cursor.valueSize();
+        }
+
+        @Override
+        public Item item() {
+            return toHeap(cursor.item());
+        }
+    }
+
+    private static final class Chunk {
+        private final ByteBuffer memory;
+        private final AtomicInteger position = new AtomicInteger();
+
+        Chunk(final ByteBuffer memory) {
+            this.memory = memory;
+        }
+
+        @Nullable
+        ByteBuffer allocate(final int size) {
+            final int offset = position.getAndAdd(size);
+            if (offset < 0 || offset > memory.capacity() - size) {
+                return null;
+            }
+            return memory.duplicate().position(offset).limit(offset + size).slice();
+        }
+    }
+
+    /**
+     * Chunks released by flushed tables, shared by arenas of a pool of memtables.
+     * A chunk is a small share of the flush threshold, so a table is not switched by its first chunk.
+     * Free chunks of two tables are kept for reuse, the rest are left to GC.
+     */
+    static final class ChunkPool {
+        private static final int MIN_CHUNK_SIZE = 4 * 1024;
+        private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+        private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger freeChunks = new AtomicInteger();
+        private final AtomicLong allocatedBytes = new AtomicLong();
+        private final int chunkSize;
+        private final int capacity;
+
+        /**
+         * Creates an empty pool.
+         *
+         * @param flushThresholdInBytes size of a table which makes it flushed
+         */
+        ChunkPool(final long flushThresholdInBytes) {
+            this.chunkSize = (int) Math.max(MIN_CHUNK_SIZE,
+                    Math.min(MAX_CHUNK_SIZE, Long.highestOneBit(flushThresholdInBytes / 16)));
+            this.capacity = (int) Math.max(1, 2 * flushThresholdInBytes / chunkSize);
+        }
+
+        ByteBuffer take() {
+            final ByteBuffer chunk = free.poll();
+            if (chunk != null) {
+                freeChunks.decrementAndGet();
+                return chunk;
+            }
+            allocatedBytes.addAndGet(chunkSize);
+            return ByteBuffer.allocateDirect(chunkSize);
+        }
+
+        void give(@NotNull final ByteBuffer chunk) {
+            if (freeChunks.incrementAndGet() <= capacity) {
+                free.add(chunk);
+            } else {
+                freeChunks.decrementAndGet();
+            }
+        }
+
+        /**
+         * Returns direct memory allocated for chunks, reused chunks are counted once.
+         *
+         * @return size in bytes
+         */
+        long allocatedBytes() {
+            return allocatedBytes.get();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Splits configured memory between memtables and caches, Bloom filters and block indexes
+ * of loaded tables are paid first.
+ * Every period the share of memtables moves towards the share of writes among writes and point reads
+ * which reached disk: heavy writes get fewer, larger flushes, reads get more cache.
+ * Time spent in GC over a limit pushes the share of heap memtables down, they are the garbage.
+ * Memtables get room for the current table and ones allowed to wait for flush without write stalls.
+ */
+final class MemoryBudget implements Closeable {
+    private static final long PERIOD_MILLIS = 1000;
+    private static final double MIN_MEMTABLE_SHARE = 0.1;
+    private static final double MAX_MEMTABLE_SHARE = 0.6;
+    private static final double GC_TIME_LIMIT = 0.1;
+    private static final long MIN_FLUSH_THRESHOLD = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+    private final long totalBytes;
+    private final int memTables;
+    private final boolean heapMemTables;
+    private final MemTablePool memTablePool;
+    private final LongConsumer caches;
+    private final TableSet ssTables;
+    private final StorageStats stats;
+    private final ScheduledExecutorService tuner;
+    private double memTableShare = (MIN_MEMTABLE_SHARE + MAX_MEMTABLE_SHARE) / 2;
+    private long lastWrites;
+    private long lastReads;
+    private long lastGcMillis;
+    private long lastNanos;
+
+    /**
+     * Splits memory evenly and starts tuning.
+     *
+     * @param config       storage parameters with the total budget
+     * @param memTablePool memtables to set flush threshold of
+     * @param caches       setter of total capacity of caches
+     * @param ssTables     tables which Bloom filters and indexes take memory
+     * @param stats        counters of writes and reads
+     */
+    MemoryBudget(@NotNull final DAOConfig config,
+                 @NotNull final MemTablePool memTablePool,
+                 @NotNull final LongConsumer caches,
+                 @NotNull final TableSet ssTables,
+                 @NotNull final StorageStats stats) {
+        this.totalBytes = config.getMemoryBudget();
+        this.memTables = config.getStallSoftMemTables() + 1;
+        this.heapMemTables = config.getMemTableStorage() == DAOConfig.MemTableStorage.HEAP;
+        this.memTablePool = memTablePool;
+        this.caches = caches;
+        this.ssTables = ssTables;
+        this.stats = stats;
+        this.lastWrites = stats.getWrites();
+        this.lastReads = stats.getPointReads();
+        this.lastGcMillis = gcMillis();
+        this.lastNanos = System.nanoTime();
+        apply();
+        this.tuner = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "memory-budget"));
+        tuner.scheduleWithFixedDelay(this::tune, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private void tune() {
+        final long writes = stats.getWrites();
+        final long reads = stats.getPointReads();
+        final long gc = gcMillis();
+        final long now = System.nanoTime();
+        final long operations = writes - lastWrites + reads - lastReads;
+        final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - lastNanos));
+        final double gcTime = (double) (gc - lastGcMillis) / elapsedMillis;
+        double target = memTableShare;
+        if (operations > 0) {
+            final double writeShare = (double) (writes - lastWrites) / operations;
+            target = MIN_MEMTABLE_SHARE + (MAX_MEMTABLE_SHARE - MIN_MEMTABLE_SHARE) * writeShare;
+        }
+        if (heapMemTables && gcTime > GC_TIME_LIMIT) {
+            target = Math.max(MIN_MEMTABLE_SHARE, target / 2);
+        }
+        memTableShare = (memTableShare + target) / 2;
+        lastWrites = writes;
+        lastReads = reads;
+        lastGcMillis = gc;
+        lastNanos = now;
+        apply();
+    }
+
+    private void apply() {
+        final long available = Math.max(0, totalBytes - ssTables.residentBytes());
+        final long memTableBytes = (long) (available * memTableShare);
+        final long flushThreshold = Math.max(MIN_FLUSH_THRESHOLD, memTableBytes / memTables);
+        final long cacheBytes = available - memTableBytes;
+        logger.debug("Memtable share {}, flush threshold {}, caches {}",
+                memTableShare, flushThreshold, cacheBytes);
+        memTablePool.setFlushThreshold(flushThreshold);
+        caches.accept(cacheBytes);
+    }
+
+    @Override
+    public void close() {
+        tuner.shutdown();
+    }
+}
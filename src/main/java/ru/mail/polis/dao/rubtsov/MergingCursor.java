@@ -0,0 +1,146 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Cursor over the newest version of every key of several sources, see {@link TableCursors#merge}.
+ * Sources are leaves of a loser tree: every inner node keeps the source which lost the match there,
+ * so a moved winner is replayed against a single path of log(k) nodes.
+ * Sources are ordered like {@link Item#COMPARATOR}, the earlier source wins on equal timestamps.
+ * Winner is picked by keys and timestamps read in place, older versions of its key are passed
+ * by the sources without materializing, as well as tombstones unless they are kept.
+ */
+final class MergingCursor implements TableCursor {
+    private final TableCursor[] sources;
+    private final boolean withRemoved;
+    // Node n has children 2n and 2n + 1, source i is the leaf k + i, tree[0] is the winner
+    private final int[] tree;
+    private byte[] lastKey = new byte[64];
+    private ByteBuffer lastKeyView = ByteBuffer.wrap(lastKey);
+
+    MergingCursor(final List<TableCursor> sources, final boolean withRemoved) {
+        this.sources = sources.toArray(new TableCursor[0]);
+        this.withRemoved = withRemoved;
+        this.tree = new int[Math.max(1, this.sources.length)];
+        if (this.sources.length > 0) {
+            tree[0] = build(1);
+            skipRemoved();
+        }
+    }
+
+    /**
+     * Plays matches of the subtree rooted at given node, losers stay in the nodes.
+     *
+     * @return winner of the subtree
+     */
+    private int build(final int node) {
+        if (node >= sources.length) {
+            return node - sources.length;
+        }
+        final int left = build(2 * node);
+        final int right = build(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        }
+        tree[node] = left;
+        return right;
+    }
+
+    private boolean beats(final int source, final int other) {
+        final TableCursor cursor = sources[source];
+        final TableCursor rival = sources[other];
+        if (!cursor.isValid()) {
+            return false;
+        }
+        if (!rival.isValid()) {
+            return true;
+        }
+        final int compare = Keys.compare(cursor.key(), rival.key());
+        if (compare != 0) {
+            return compare < 0;
+        }
+        final long timeStamp = Math.abs(cursor.timeStamp());
+        final long rivalTimeStamp = Math.abs(rival.timeStamp());
+        return timeStamp == rivalTimeStamp ? source < other : timeStamp > rivalTimeStamp;
+    }
+
+    /**
+     * Moves the winner source and plays its new record against losers on the way to the root.
+     */
+    private void advanceWinner() {
+        int winner = tree[0];
+        sources[winner].next();
+        for (int node = (winner + sources.length) >>> 1; node > 0; node >>>= 1) {
+            final int loser = tree[node];
+            if (beats(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * Moves sources past key of the winner, its versions are winners one by one as they are the least records.
+     */
+    private void skipKey() {
+        final ByteBuffer key = rememberKey();
+        do {
+            advanceWinner();
+        } while (isValid() && key().equals(key));
+    }
+
+    private ByteBuffer rememberKey() {
+        final ByteBuffer key = key();
+        final int size = key.remaining();
+        if (lastKey.length < size) {
+            lastKey = new byte[Math.max(size, lastKey.length * 2)];
+            lastKeyView = ByteBuffer.wrap(lastKey);
+        }
+        // Absolute reads, the view may be an item's own key shared with other readers
+        final int position = key.position();
+        for (int i = 0; i < size; i++) {
+            lastKey[i] = key.get(position + i);
+        }
+        return lastKeyView.limit(size).position(0);
+    }
+
+    private void skipRemoved() {
+        while (!withRemoved && isValid() && isRemoved()) {
+            skipKey();
+        }
+    }
+
+    @Override
+    public boolean isValid() {
+        return sources.length > 0 && sources[tree[0]].isValid();
+    }
+
+    @Override
+    public void next() {
+        skipKey();
+        skipRemoved();
+    }
+
+    @Override
+    public ByteBuffer key() {
+        return sources[tree[0]].key();
+    }
+
+    @Override
+    public long timeStamp() {
+        return sources[tree[0]].timeStamp();
+    }
+
+    @Override
+    public int valueSize() {
+        return sources[tree[0]].valueSize();
+    }
+
+    @Override
+    public Item item() {
+        return sources[tree[0]].item();
+    }
+}
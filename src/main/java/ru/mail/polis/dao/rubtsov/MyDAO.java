@@ -2,36 +2,39 @@ package ru.mail.polis.dao.rubtsov;
 
 import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.mail.polis.Record;
 import ru.mail.polis.dao.DAO;
+import ru.mail.polis.dao.Iters;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Stream;
 
 /**
  * Simple LSM based {@link DAO} implementation.
  */
 public class MyDAO implements DAO {
     private final MemTablePool memTablePool;
-    private final List<SSTable> ssTables;
+    private final TableSet ssTables;
     private final File ssTablesDir;
     private final Logger logger = LoggerFactory.getLogger(MyDAO.class);
-    private final FlushThread flushThread;
-    private final ReadWriteLock readWriteLock;
+    private final Flusher flusher;
+    private final BlockCache blockCache;
+    private final RowCache rowCache;
+    private final double rowCacheShare;
+    private final Compactor compactor;
+    private final TableFactory tableFactory;
+    private final IoRateLimiter ioRateLimiter;
+    private final StorageStats stats = new StorageStats();
+    private final WriteStallController stallController;
+    @Nullable
+    private final MemoryBudget memoryBudget;
 
     /**
      * Constructs a new, empty storage.
@@ -40,168 +43,267 @@ public class MyDAO implements DAO {
      * @param heapSizeInBytes JVM max heap size
      */
     public MyDAO(final File dataFolder, final long heapSizeInBytes) throws IOException {
-        memTablePool = new MemTablePool(heapSizeInBytes / 64);
+        this(dataFolder, heapSizeInBytes, DAOConfig.defaults());
+    }
+
+    /**
+     * Constructs a new, empty storage with given parameters.
+     *
+     * @param dataFolder      the folder which SSTables will be contained.
+     * @param heapSizeInBytes JVM max heap size
+     * @param config          storage parameters
+     */
+    public MyDAO(final File dataFolder,
+                 final long heapSizeInBytes,
+                 @NotNull final DAOConfig config) throws IOException {
+        this.blockCache = new BlockCache(config.getBlockCacheSize());
+        this.rowCache = new RowCache(config.getRowCacheSize());
+        final long cacheSize = config.getRowCacheSize() + config.getBlockCacheSize();
+        this.rowCacheShare = cacheSize == 0 ? 0 : (double) config.getRowCacheSize() / cacheSize;
         ssTablesDir = dataFolder;
-        ssTables = new CopyOnWriteArrayList<>();
-        try (Stream<Path> files = Files.list(ssTablesDir.toPath())) {
-            files.filter(Files::isRegularFile)
-                    .filter(p -> p.getFileName().toString().endsWith(SSTable.VALID_FILE_EXTENSTION))
-                    .forEach(p -> {
-                        try {
-                            initNewSSTable(p.toFile());
-                        } catch (IOException e) {
-                            logger.error("Init of SSTable failed: {}", p.getFileName(), e);
-                        }
-                    });
-        }
-        flushThread = new FlushThread();
-        flushThread.start();
-        readWriteLock = new ReentrantReadWriteLock();
+        memTablePool = new MemTablePool(heapSizeInBytes / 64, ssTablesDir.toPath(), config, rowCache);
+        ioRateLimiter = new IoRateLimiter(config.getBackgroundIoRate());
+        tableFactory = new TableFactory(ssTablesDir, config, blockCache, ioRateLimiter);
+        ssTables = new TableLoader(tableFactory, ssTablesDir).load();
+        compactor = new Compactor(ssTables, tableFactory, config, stats);
+        stallController = new WriteStallController(
+                new WriteStallController.Limit(memTablePool::pendingBytes, memTablePool::getFlushThreshold,
+                        config.getStallSoftMemTables(), config.getStallHardMemTables()),
+                new WriteStallController.Limit(ssTables::level0Size,
+                        config.getStallSoftLevel0Tables(), config.getStallHardLevel0Tables()),
+                stats);
+        memoryBudget = config.getMemoryBudget() > 0
+                ? new MemoryBudget(config, memTablePool, this::resizeCaches, ssTables, stats)
+                : null;
+        compactor.start();
+        compactor.schedule();
+        flusher = new Flusher(memTablePool, ssTables, this::flushTable, compactor::schedule,
+                config.getFlushThreads());
+        flusher.start();
         logger.info("DAO in {} created", ssTablesDir.getAbsolutePath());
     }
 
-    private void initNewSSTable(final File ssTableFile) throws IOException {
-        try {
-            final SSTable ssTable = new SSTable(ssTableFile);
-            ssTables.add(ssTable);
-        } catch (IllegalArgumentException e) {
-            logger.error("File corrupted: {}, skipped.", ssTableFile.getName(), e);
-        }
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
+        return records(itemIterator(from));
+    }
+
+    private static Iterator<Record> records(final Iterator<Item> items) {
+        return Iterators.transform(items, i -> Record.of(i.getKey(), i.getValue()));
     }
 
+    /**
+     * Iterates over [from, to) range, SSTables which key range doesn't overlap it are not touched.
+     *
+     * @param from the first key of range inclusive
+     * @param to   the last key of range exclusive, {@code null} means no bound
+     * @return iterator over live records
+     */
     @NotNull
     @Override
-    public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
-        final Iterator<Item> itemIterator = itemIterator(from);
-        return Iterators.transform(itemIterator, i -> Record.of(i.getKey(), i.getValue()));
+    public Iterator<Record> range(@NotNull final ByteBuffer from,
+                                  @Nullable final ByteBuffer to) throws IOException {
+        if (to == null) {
+            return iterator(from);
+        }
+        if (Keys.compare(from, to) > 0) {
+            return Iters.empty();
+        }
+        return records(items(from, to, false));
     }
 
     private Iterator<Item> itemIterator(@NotNull final ByteBuffer from) {
-        return IteratorUtils.itersTransformWithoutRemoved(collectItems(from));
+        return items(from, null, false);
     }
 
     @NotNull
     @Override
     public Iterator<Item> latestIterator(@NotNull final ByteBuffer from) {
-        return IteratorUtils.itersTransformWithRemoved(collectItems(from));
+        return items(from, null, true);
     }
 
-    private Collection<Iterator<Item>> collectItems(@NotNull final ByteBuffer from) {
-        final Collection<Iterator<Item>> iterators;
-        readWriteLock.readLock().lock();
-        try {
-            iterators = new ArrayList<>(ssTables.size() + memTablePool.size());
-            iterators.add(memTablePool.latestIterator(from));
-            for (final Table s : ssTables) {
-                iterators.add(s.iterator(from));
+    /**
+     * Merges memory and SSTables, tables are pinned until the iterator is exhausted or abandoned,
+     * so long scans keep reading tables merged meanwhile.
+     */
+    private Iterator<Item> items(@NotNull final ByteBuffer from,
+                                 @Nullable final ByteBuffer to,
+                                 final boolean withRemoved) {
+        // Memory goes first, a table flushed meanwhile is then found in SSTables snapshot
+        final TableCursor memCursor = memTablePool.cursor(from);
+        final TableSnapshot snapshot = ssTables.acquire();
+        final List<SSTable> tables = snapshot.getTables();
+        final List<TableCursor> cursors = new ArrayList<>(tables.size() + 1);
+        cursors.add(memCursor);
+        for (final SSTable s : tables) {
+            if (s.overlaps(from, to)) {
+                cursors.add(s.cursor(from));
             }
-        } finally {
-            readWriteLock.readLock().unlock();
         }
-        return iterators;
+        final Iterator<Item> items = TableCursors.items(TableCursors.merge(cursors, withRemoved));
+        return snapshot.pin(IteratorUtils.until(items, to));
     }
 
-    @NotNull
+    /**
+     * Looks for the key in memory first, then in {@link RowCache} and in SSTables from the newest to the oldest.
+     * Search stops as soon as remaining tables can't have newer version of the key than already found,
+     * tables which key range or Bloom filter excludes the key are not probed.
+     *
+     * @param key key to look for
+     * @return the newest item with given key, tombstones included, or {@code null} if there is no such key
+     */
+    @Nullable
     @Override
-    public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementExceptionLite {
-        final var iter = iterator(key);
-        if (!iter.hasNext()) {
-            throw new NoSuchElementExceptionLite("Not found");
+    public Item getLatest(@NotNull final ByteBuffer key) {
+        final long start = System.nanoTime();
+        final Item item = findLatest(key);
+        ioRateLimiter.foregroundRead(System.nanoTime() - start);
+        return item;
+    }
+
+    @Nullable
+    private Item findLatest(@NotNull final ByteBuffer key) {
+        // Taken before memory is searched, so a write racing with the read keeps its item out of the cache
+        final long version = rowCache.version(key);
+        final Item memItem = memTablePool.getLatest(key);
+        if (memItem != null) {
+            return memItem;
+        }
+        final Item cached = rowCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Item latest = null;
+        int probes = 0;
+        try (TableSnapshot snapshot = ssTables.acquire()) {
+            for (final SSTable s : snapshot.getTables()) {
+                if (latest != null && s.getMaxTimeStamp() < latest.getTimeStampAbs()) {
+                    break;
+                }
+                if (!s.mightContain(key)) {
+                    continue;
+                }
+                probes++;
+                final Item item = s.getLatest(key);
+                if (item != null && (latest == null || item.getTimeStampAbs() > latest.getTimeStampAbs())) {
+                    latest = item;
+                }
+            }
+        }
+        stats.pointRead(probes);
+        if (latest != null) {
+            rowCache.put(latest, version);
         }
+        return latest;
+    }
 
-        final Record next = iter.next();
-        if (!next.getKey().equals(key)) {
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementExceptionLite {
+        final Item item = getLatest(key);
+        if (item == null || item.isRemoved()) {
             throw new NoSuchElementExceptionLite("Not found");
         }
-        return next.getValue();
+        return item.getValue().asReadOnlyBuffer();
     }
 
+    /**
+     * Writes the value, the write is delayed while flushes or compactions are behind.
+     *
+     * @param key   key
+     * @param value value
+     * @throws WriteRejectedException if background work stays too far behind, see {@link WriteStallController}
+     */
     @Override
     public void upsert(@NotNull final ByteBuffer key, @NotNull final ByteBuffer value) throws IOException {
+        stallController.admit(key.remaining() + value.remaining());
+        ioRateLimiter.foregroundWrite();
         memTablePool.upsert(key, value);
+        stats.written();
     }
 
     @Override
     public void remove(@NotNull final ByteBuffer key) throws IOException {
+        stallController.admit(key.remaining());
+        ioRateLimiter.foregroundWrite();
         memTablePool.remove(key);
+        stats.written();
     }
 
     @Override
     public void close() throws IOException {
+        if (memoryBudget != null) {
+            memoryBudget.close();
+        }
         memTablePool.close();
         try {
-            flushThread.join();
+            flusher.join();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        logger.info("DAO in {} closed", ssTablesDir.getAbsolutePath());
+        compactor.close();
+        ssTables.close();
+        logger.info("DAO in {} closed, block cache hits: {}, misses: {}, row cache hit ratio: {}, evictions: {}, "
+                        + "write amplification: {}, read amplification: {}, write stall ms: {}, rejected writes: {}",
+                ssTablesDir.getAbsolutePath(), blockCache.hitCount(), blockCache.missCount(),
+                rowCache.hitRatio(), rowCache.evictionCount(),
+                stats.writeAmplification(), stats.readAmplification(), stats.getStallTimeMillis(),
+                stats.getRejectedWrites());
     }
 
-    private void flushTable(final Table table) throws IOException {
-        final Iterator<Item> iterator = table.latestIterator(ByteBuffer.allocate(0));
-        final Path flushedFilePath = SSTable.writeNewTable(iterator, ssTablesDir, table.getUniqueID());
-        initNewSSTable(flushedFilePath.toFile());
+    /**
+     * Returns cache of decompressed blocks, which is used by tables written with compression.
+     *
+     * @return block cache
+     */
+    public BlockCache getBlockCache() {
+        return blockCache;
     }
 
-    @Override
-    public void compact() throws IOException {
-        final Collection<Iterator<Item>> iterators;
-        readWriteLock.readLock().lock();
-        try {
-            iterators = new ArrayList<>();
-            for (final Table s : ssTables) {
-                iterators.add(s.iterator(ByteBuffer.allocate(0)));
-            }
-        } finally {
-            readWriteLock.readLock().unlock();
-        }
-        final Iterator<Item> itersTransform = IteratorUtils.itersTransformWithoutRemoved(iterators);
-        final Path compactioned = SSTable.writeNewTable(itersTransform, ssTablesDir, UUID.randomUUID().toString());
-        readWriteLock.writeLock().lock();
-        try {
-            ssTables.forEach(s -> removeFile(s.getTableFile().toPath()));
-            ssTables.clear();
-            initNewSSTable(compactioned.toFile());
-        } finally {
-            readWriteLock.writeLock().unlock();
-        }
+    /**
+     * Returns cache of items found by point reads in SSTables.
+     *
+     * @return row cache
+     */
+    public RowCache getRowCache() {
+        return rowCache;
     }
 
-    private void removeFile(final Path p) {
-        try {
-            Files.delete(p);
-        } catch (IOException e) {
-            logger.error("Can't remove old file: {}", p.getFileName(), e);
-        }
+    /**
+     * Returns counters of write and read amplification.
+     *
+     * @return storage statistics
+     */
+    public StorageStats getStats() {
+        return stats;
     }
 
-    private class FlushThread extends Thread {
-        FlushThread() {
-            super("flusher");
+    private void resizeCaches(final long capacityInBytes) {
+        final long rowCacheSize = (long) (capacityInBytes * rowCacheShare);
+        if (rowCacheShare > 0) {
+            rowCache.setCapacity(rowCacheSize);
         }
+        blockCache.setCapacity(capacityInBytes - rowCacheSize);
+    }
 
-        @Override
-        public void run() {
-            boolean poisonReceived = false;
-            while (!poisonReceived && !isInterrupted()) {
-                logger.info("Number of files: {}", ssTables.size());
-                TableToFlush tableToFlush = null;
-                try {
-                    tableToFlush = memTablePool.takeToFlush();
-                    poisonReceived = tableToFlush.isPoisonPill();
-                    if (tableToFlush.getTable().sizeInBytes() > 0) {
-                        flushTable(tableToFlush.getTable());
-                    }
-                    memTablePool.flushed(tableToFlush.getTable().getUniqueID());
-                } catch (InterruptedException e) {
-                    interrupt();
-                } catch (IOException e) {
-                    logger.error("Error while flushing a table {}", tableToFlush.getTable().getUniqueID(), e);
-                }
-            }
-            if (poisonReceived) {
-                logger.info("Poison pill received. Flushing stopped.");
-            }
-        }
+    @NotNull
+    private SSTable flushTable(@NotNull final MemTable table) throws IOException {
+        // The table is released only after it is installed, so its items are written in place
+        final Iterator<Item> items = TableCursors.items(table.cursorInPlace());
+        final SSTable flushed = tableFactory.write(items, table.getUniqueID());
+        stats.flushed(flushed.sizeInBytes());
+        return flushed;
+    }
+
+    /**
+     * Merges all SSTables and drops tombstones, leveled compaction splits the result into tables of target size.
+     * Tables flushed while merging are kept, background compaction waits for manual one and vice versa.
+     *
+     * @throws IOException if merged table can't be written
+     */
+    @Override
+    public void compact() throws IOException {
+        compactor.compactAll();
     }
 }
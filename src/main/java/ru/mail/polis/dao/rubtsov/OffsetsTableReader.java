@@ -0,0 +1,192 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reader of tables written before block format was introduced.
+ * Format:
+ * [key size][key][timestamp] (if value exists [value size][value]) * n times
+ * followed by [array of longs that contains offsets].
+ */
+final class OffsetsTableReader implements TableReader {
+    private final ByteBuffer records;
+    private final LongBuffer offsets;
+    private final long recordsAmount;
+
+    /**
+     * Creates reader over records and offsets of a table.
+     *
+     * @param records       records of table
+     * @param offsets       offsets array, one long per record
+     * @param recordsAmount number of records
+     * @throws IllegalArgumentException if offsets don't match records amount
+     */
+    OffsetsTableReader(final ByteBuffer records, final ByteBuffer offsets, final long recordsAmount) {
+        Preconditions.checkArgument(offsets.remaining() == recordsAmount * Long.BYTES);
+        this.records = records.slice().asReadOnlyBuffer();
+        this.offsets = offsets.slice().asLongBuffer();
+        this.recordsAmount = recordsAmount;
+    }
+
+    private ByteBuffer getRecord(final long index) {
+        final long offset = offsets.get((int) index);
+        long recordLimit;
+        if (index == recordsAmount - 1) {
+            recordLimit = records.limit();
+        } else {
+            recordLimit = offsets.get((int) index + 1);
+        }
+        return records.duplicate().position((int) offset).limit((int) recordLimit).slice().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer getKey(final ByteBuffer record) {
+        final ByteBuffer rec = record.duplicate();
+        final int keySize = rec.getInt();
+        return rec.limit(Integer.BYTES + keySize).slice().asReadOnlyBuffer();
+    }
+
+    private long getTimeStamp(final ByteBuffer record) {
+        final ByteBuffer rec = record.duplicate();
+        rec.position(Integer.BYTES + rec.getInt());
+        return rec.getLong();
+    }
+
+    private ByteBuffer getValue(final ByteBuffer record) {
+        final ByteBuffer rec = record.duplicate();
+        final int keySize = rec.getInt();
+        return rec.position(Integer.BYTES + keySize + Long.BYTES * 2).slice().asReadOnlyBuffer();
+    }
+
+    private Item getItem(final long pos) {
+        final ByteBuffer rec = getRecord(pos);
+        final ByteBuffer key = getKey(rec);
+        final long timeStamp = getTimeStamp(rec);
+        ByteBuffer value;
+        if (timeStamp < 0) {
+            value = Item.TOMBSTONE;
+        } else {
+            value = getValue(rec);
+        }
+        return Item.of(key, value, timeStamp);
+    }
+
+    private int compareKey(final long index, final ByteBuffer key) {
+        final int offset = (int) offsets.get((int) index);
+        return Keys.compare(records, offset + Integer.BYTES, records.getInt(offset), key);
+    }
+
+    private long getPosition(final ByteBuffer key) {
+        long left = 0;
+        long right = recordsAmount - 1;
+        while (left <= right) {
+            final long mid = left + (right - left) / 2;
+            final int compare = compareKey(mid, key);
+            if (compare > 0) {
+                right = mid - 1;
+            } else if (compare < 0) {
+                left = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return left;
+    }
+
+    @Nullable
+    @Override
+    public Item get(@NotNull final ByteBuffer key) {
+        final long pos = getPosition(key);
+        if (pos >= recordsAmount || compareKey(pos, key) != 0) {
+            return null;
+        }
+        return getItem(pos);
+    }
+
+    @Override
+    public List<ByteBuffer> sampleKeys(final int amount) {
+        final long step = Math.max(1, recordsAmount / amount);
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (long pos = 0; pos < recordsAmount; pos += step) {
+            keys.add(getKey(getRecord(pos)));
+        }
+        return keys;
+    }
+
+    @Override
+    public Iterator<Item> iterator(@NotNull final ByteBuffer from) {
+        return TableCursors.items(cursor(from));
+    }
+
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return new Cursor(getPosition(from));
+    }
+
+    /**
+     * Cursor reading key and timestamp of a record in place through a reused view.
+     */
+    private final class Cursor implements TableCursor {
+        private final ByteBuffer keyView = records.duplicate();
+        private long pos;
+        private int keyPosition;
+        private int keySize;
+        private long timeStamp;
+        private int valueSize;
+
+        Cursor(final long pos) {
+            this.pos = pos;
+            decode();
+        }
+
+        private void decode() {
+            if (pos >= recordsAmount) {
+                return;
+            }
+            final int offset = (int) offsets.get((int) pos);
+            final int recordLimit = pos == recordsAmount - 1 ? records.limit() : (int) offsets.get((int) pos + 1);
+            keySize = records.getInt(offset);
+            keyPosition = offset + Integer.BYTES;
+            timeStamp = records.getLong(keyPosition + keySize);
+            valueSize = timeStamp < 0 ? 0 : recordLimit - (keyPosition + keySize + Long.BYTES * 2);
+        }
+
+        @Override
+        public boolean isValid() {
+            return pos < recordsAmount;
+        }
+
+        @Override
+        public void next() {
+            pos++;
+            decode();
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return keyView.limit(keyPosition + keySize).position(keyPosition);
+        }
+
+        @Override
+        public long timeStamp() {
+            return timeStamp;
+        }
+
+        @Override
+        public int valueSize() {
+            return valueSize;
+        }
+
+        @Override
+        public Item item() {
+            return getItem(pos);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor over blocks of {@link SSTableFooter#BLOCK_VERSION} tables.
+ * Each record is [key size][key][timestamp] (if value exists [value size][value]).
+ */
+final class PlainBlockCursor implements BlockCursor {
+    private final ByteBuffer block;
+    private final ByteBuffer keyView;
+    private int nextPosition;
+    private int keyPosition;
+    private int keySize;
+    private long timeStamp;
+    private int valuePosition;
+    private int valueSize;
+    private boolean valid;
+
+    PlainBlockCursor(final ByteBuffer block) {
+        this.block = block.slice();
+        this.keyView = this.block.duplicate();
+        next();
+    }
+
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public void next() {
+        if (nextPosition >= block.limit()) {
+            valid = false;
+            return;
+        }
+        keySize = block.getInt(nextPosition);
+        keyPosition = nextPosition + Integer.BYTES;
+        timeStamp = block.getLong(keyPosition + keySize);
+        valuePosition = keyPosition + keySize + Long.BYTES;
+        if (timeStamp < 0) {
+            valueSize = 0;
+        } else {
+            valueSize = (int) block.getLong(valuePosition);
+            valuePosition += Long.BYTES;
+        }
+        nextPosition = valuePosition + valueSize;
+        valid = true;
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer key) {
+        nextPosition = 0;
+        next();
+        while (valid && compareKey(key) < 0) {
+            next();
+        }
+    }
+
+    @Override
+    public int compareKey(@NotNull final ByteBuffer key) {
+        return Keys.compare(block, keyPosition, keySize, key);
+    }
+
+    @Override
+    public ByteBuffer key() {
+        return keyView.limit(keyPosition + keySize).position(keyPosition);
+    }
+
+    @Override
+    public long timeStamp() {
+        return timeStamp;
+    }
+
+    @Override
+    public int valueSize() {
+        return valueSize;
+    }
+
+    @Override
+    public Item item() {
+        final ByteBuffer key = region(keyPosition, keySize);
+        if (timeStamp < 0) {
+            return Item.of(key, Item.TOMBSTONE, timeStamp);
+        }
+        return Item.of(key, region(valuePosition, valueSize), timeStamp);
+    }
+
+    private ByteBuffer region(final int position, final int size) {
+        return block.duplicate().position(position).limit(position + size).slice().asReadOnlyBuffer();
+    }
+}
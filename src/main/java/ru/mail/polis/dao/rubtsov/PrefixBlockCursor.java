@@ -0,0 +1,137 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cursor over prefix compressed blocks written by {@link BlockBuilder}.
+ * Key of current record is restored into a reusable array.
+ */
+final class PrefixBlockCursor implements BlockCursor {
+    private final ByteBuffer block;
+    private final int restartsPosition;
+    private final int restartsCount;
+    private byte[] key = new byte[64];
+    private ByteBuffer keyView = ByteBuffer.wrap(key);
+    private int keySize;
+    private long timeStamp;
+    private int valuePosition;
+    private int valueSize;
+    private boolean valid;
+
+    PrefixBlockCursor(final ByteBuffer block) {
+        this.block = block.slice();
+        restartsCount = this.block.getInt(this.block.limit() - Integer.BYTES);
+        restartsPosition = this.block.limit() - Integer.BYTES * (restartsCount + 1);
+        if (restartsCount > 0) {
+            decodeAt(0);
+        }
+    }
+
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public void next() {
+        if (block.position() >= restartsPosition) {
+            valid = false;
+            return;
+        }
+        decodeAt(block.position());
+    }
+
+    private void decodeAt(final int position) {
+        block.position(position);
+        final int shared = VarInts.get(block);
+        final int unshared = VarInts.get(block);
+        keySize = shared + unshared;
+        if (key.length < keySize) {
+            key = Arrays.copyOf(key, Math.max(keySize, key.length * 2));
+            keyView = ByteBuffer.wrap(key);
+        }
+        block.get(key, shared, unshared);
+        timeStamp = block.getLong();
+        if (timeStamp < 0) {
+            valueSize = 0;
+        } else {
+            valueSize = VarInts.get(block);
+        }
+        valuePosition = block.position();
+        block.position(valuePosition + valueSize);
+        valid = true;
+    }
+
+    private int restart(final int index) {
+        return block.getInt(restartsPosition + Integer.BYTES * index);
+    }
+
+    /**
+     * Compares full key stored at restart point with given key.
+     */
+    private int compareRestartKey(final int index, final ByteBuffer target) {
+        final ByteBuffer record = block.duplicate().position(restart(index));
+        VarInts.get(record);
+        final int size = VarInts.get(record);
+        return Keys.compare(record, record.position(), size, target);
+    }
+
+    @Override
+    public void seek(@NotNull final ByteBuffer target) {
+        if (restartsCount == 0) {
+            valid = false;
+            return;
+        }
+        int left = 0;
+        int right = restartsCount - 1;
+        while (left < right) {
+            final int mid = (left + right + 1) >>> 1;
+            if (compareRestartKey(mid, target) <= 0) {
+                left = mid;
+            } else {
+                right = mid - 1;
+            }
+        }
+        decodeAt(restart(left));
+        while (valid && compareKey(target) < 0) {
+            next();
+        }
+    }
+
+    @Override
+    public int compareKey(@NotNull final ByteBuffer target) {
+        return Keys.compare(key, 0, keySize, target);
+    }
+
+    @Override
+    public ByteBuffer key() {
+        return keyView.limit(keySize).position(0);
+    }
+
+    @Override
+    public long timeStamp() {
+        return timeStamp;
+    }
+
+    @Override
+    public int valueSize() {
+        return valueSize;
+    }
+
+    @Override
+    public Item item() {
+        final ByteBuffer itemKey = ByteBuffer.wrap(Arrays.copyOf(key, keySize));
+        if (timeStamp < 0) {
+            return Item.of(itemKey, Item.TOMBSTONE, timeStamp);
+        }
+        final ByteBuffer value = block.duplicate()
+                .position(valuePosition)
+                .limit(valuePosition + valueSize)
+                .slice()
+                .asReadOnlyBuffer();
+        return Item.of(itemKey, value, timeStamp);
+    }
+}
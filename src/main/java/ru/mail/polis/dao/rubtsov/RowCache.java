@@ -0,0 +1,264 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the latest items, values or tombstones, found by point reads in SSTables.
+ * Keys are spread over LRU segments bounded by bytes, every segment admits a new item
+ * only if it was requested more often than items it would evict, see {@link FrequencySketch},
+ * so keys read once don't push hot keys out.
+ * Writes invalidate cached items. A read takes {@link #version} of the key before looking into memory
+ * and its item is cached only if no write of the key has happened since, so a stale item read from
+ * SSTables never outlives a concurrent write.
+ */
+public final class RowCache {
+    private static final int SEGMENTS = 16;
+    private static final int STRIPES = 1024;
+    // Map entry, item and buffers
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int ESTIMATED_ENTRY_SIZE = 256;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final boolean enabled;
+    private volatile long capacityInBytes;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacityInBytes maximum total size of cached items, 0 disables the cache for good
+     */
+    RowCache(final long capacityInBytes) {
+        this.enabled = capacityInBytes > 0;
+        this.capacityInBytes = capacityInBytes;
+        final int counters = (int) Math.min(Integer.MAX_VALUE, capacityInBytes / SEGMENTS / ESTIMATED_ENTRY_SIZE);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(counters);
+        }
+    }
+
+    private static int hash(final ByteBuffer key) {
+        final int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static long weight(final Item item) {
+        return item.getKey().remaining() + item.getValue().remaining() + ENTRY_OVERHEAD;
+    }
+
+    private static Item copy(final Item item) {
+        final ByteBuffer key = item.getKey();
+        final ByteBuffer value = item.getValue();
+        final byte[] bytes = new byte[key.remaining() + value.remaining()];
+        key.duplicate().get(bytes, 0, key.remaining());
+        final ByteBuffer keyCopy = ByteBuffer.wrap(bytes, 0, key.remaining()).slice();
+        if (item.isRemoved()) {
+            return Item.of(keyCopy, Item.TOMBSTONE, item.getTimeStamp());
+        }
+        value.duplicate().get(bytes, key.remaining(), value.remaining());
+        return Item.of(keyCopy, ByteBuffer.wrap(bytes, key.remaining(), value.remaining()).slice(),
+                item.getTimeStamp());
+    }
+
+    private Segment segment(final int hash) {
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static int stripe(final int hash) {
+        return (hash >>> 4) & (STRIPES - 1);
+    }
+
+    /**
+     * Returns version of the key, which should be taken before the key is looked for in memory.
+     *
+     * @param key key
+     * @return version to pass to {@link #put}
+     */
+    long version(@NotNull final ByteBuffer key) {
+        return enabled ? versions.get(stripe(hash(key))) : 0;
+    }
+
+    /**
+     * Returns cached item and counts the access for admission.
+     *
+     * @param key key
+     * @return item or {@code null} if the key isn't cached
+     */
+    @Nullable
+    Item get(@NotNull final ByteBuffer key) {
+        if (!enabled) {
+            return null;
+        }
+        final int hash = hash(key);
+        final Item item = segment(hash).get(key, hash);
+        if (item == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Buffers of cached item are not handed out
+        return Item.of(item.getKey(), item.getValue(), item.getTimeStamp());
+    }
+
+    /**
+     * Caches a copy of item read from SSTables unless the key was written since its version was taken.
+     *
+     * @param item    the latest item of the key
+     * @param version version of the key taken before the read
+     */
+    void put(@NotNull final Item item, final long version) {
+        if (!enabled) {
+            return;
+        }
+        final int hash = hash(item.getKey());
+        segment(hash).put(item, hash, version);
+    }
+
+    /**
+     * Drops cached item of the key, it should be called after the key is written to memory.
+     *
+     * @param key key written
+     */
+    void invalidate(@NotNull final ByteBuffer key) {
+        if (!enabled) {
+            return;
+        }
+        final int hash = hash(key);
+        versions.incrementAndGet(stripe(hash));
+        segment(hash).remove(key);
+    }
+
+    /**
+     * Changes capacity, items are evicted if the cache doesn't fit it.
+     *
+     * @param capacityInBytes maximum total size of cached items
+     */
+    void setCapacity(final long capacityInBytes) {
+        Preconditions.checkArgument(capacityInBytes >= 0, "Capacity should not be negative");
+        Preconditions.checkState(enabled, "Cache is disabled");
+        this.capacityInBytes = capacityInBytes;
+        for (final Segment segment : segments) {
+            segment.trim(capacityInBytes / SEGMENTS);
+        }
+    }
+
+    public long capacityInBytes() {
+        return capacityInBytes;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns share of lookups which found the key cached.
+     *
+     * @return hit ratio, 0 if there were no lookups
+     */
+    public double hitRatio() {
+        final long hitCount = hits.sum();
+        final long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Returns amount of items evicted to fit capacity, invalidated ones are not counted.
+     *
+     * @return evictions
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns total size of items currently cached.
+     *
+     * @return size in bytes
+     */
+    public long sizeInBytes() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            size += segment.sizeInBytes();
+        }
+        return size;
+    }
+
+    private final class Segment {
+        private final Map<ByteBuffer, Item> items = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long sizeInBytes;
+
+        Segment(final int counters) {
+            this.sketch = new FrequencySketch(counters);
+        }
+
+        @Nullable
+        synchronized Item get(final ByteBuffer key, final int hash) {
+            sketch.increment(hash);
+            return items.get(key);
+        }
+
+        synchronized void put(final Item item, final int hash, final long version) {
+            final long capacity = capacityInBytes / SEGMENTS;
+            final long weight = weight(item);
+            if (versions.get(stripe(hash)) != version || weight > capacity) {
+                return;
+            }
+            final Item previous = items.remove(item.getKey());
+            if (previous != null) {
+                sizeInBytes -= weight(previous);
+            }
+            final int frequency = sketch.frequency(hash);
+            final Iterator<Map.Entry<ByteBuffer, Item>> eldest = items.entrySet().iterator();
+            while (sizeInBytes + weight > capacity) {
+                final Map.Entry<ByteBuffer, Item> victim = eldest.next();
+                if (sketch.frequency(hash(victim.getKey())) >= frequency) {
+                    // The item is not admitted, the cache keeps more popular ones
+                    return;
+                }
+                sizeInBytes -= weight(victim.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+            final Item cached = copy(item);
+            items.put(cached.getKey(), cached);
+            sizeInBytes += weight;
+        }
+
+        synchronized void remove(final ByteBuffer key) {
+            final Item item = items.remove(key);
+            if (item != null) {
+                sizeInBytes -= weight(item);
+            }
+        }
+
+        synchronized void trim(final long capacity) {
+            final Iterator<Item> eldest = items.values().iterator();
+            while (sizeInBytes > capacity && eldest.hasNext()) {
+                sizeInBytes -= weight(eldest.next());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized long sizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+}
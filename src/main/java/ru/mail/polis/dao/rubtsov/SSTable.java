@@ -1,23 +1,20 @@
 package ru.mail.polis.dao.rubtsov;
 
-import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.LongBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static com.google.common.io.Files.getNameWithoutExtension;
 
@@ -26,147 +23,320 @@ import static com.google.common.io.Files.getNameWithoutExtension;
  */
 public final class SSTable implements Table {
     static final String VALID_FILE_EXTENSTION = ".dat";
-    private static final String TEMP_FILE_EXTENSTION = ".tmp";
-    private final ByteBuffer records;
-    private final LongBuffer offsets;
-    private final long recordsAmount;
-    private final File tableFile;
+    static final String TEMP_FILE_EXTENSTION = ".tmp";
+    private static final String LEVEL_SEPARATOR = "_L";
+    private final Logger logger = LoggerFactory.getLogger(SSTable.class);
+    private final TableFile file;
+    private final String uniqueID;
+    private final int level;
+    private final long minTimeStamp;
+    private final long maxTimeStamp;
+    private final Supplier<TableContents> contents;
+    // Contents once read, shared with the table moved to another level
+    private final AtomicReference<TableContents> loaded;
 
     /**
-     * Creates a new representation of data file.
+     * Creates a new representation of data file and reads it, the file is mapped.
      *
-     * @param tableFile file with data
+     * @param tableFile  file with data
+     * @param blockCache cache for decompressed blocks
      * @throws IllegalArgumentException if file corrupted
      */
-    SSTable(final File tableFile) throws IOException {
-        this.tableFile = tableFile;
-        try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(
-                tableFile.toPath(), StandardOpenOption.READ)) {
-            Preconditions.checkArgument(fileChannel.size() >= Long.BYTES);
-            final ByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY,
-                    0, tableFile.length()).order(ByteOrder.BIG_ENDIAN);
-            Preconditions.checkArgument(mappedByteBuffer.limit() < Integer.MAX_VALUE);
-            recordsAmount = mappedByteBuffer.getLong(mappedByteBuffer.limit() - Long.BYTES);
-            Preconditions.checkArgument(mappedByteBuffer.limit() > recordsAmount * 21);
-            offsets = mappedByteBuffer.duplicate()
-                    .position((int) (mappedByteBuffer.limit() - Long.BYTES * (recordsAmount + 1)))
-                    .limit(mappedByteBuffer.limit() - Long.BYTES).slice().asLongBuffer();
-            Preconditions.checkArgument(offsets.limit() == recordsAmount);
-            records = mappedByteBuffer.duplicate()
-                    .limit((int) (mappedByteBuffer.limit() - Long.BYTES * (recordsAmount + 1)))
-                    .slice().asReadOnlyBuffer();
+    SSTable(final File tableFile, final BlockCache blockCache) throws IOException {
+        this(tableFile, blockCache, DAOConfig.ReadMode.MMAP);
+    }
+
+    /**
+     * Creates a new representation of data file and reads it.
+     *
+     * @param tableFile  file with data
+     * @param blockCache cache for decompressed blocks and blocks read on demand
+     * @param readMode   how data blocks are read
+     * @throws IllegalArgumentException if file corrupted
+     */
+    SSTable(final File tableFile,
+            final BlockCache blockCache,
+            final DAOConfig.ReadMode readMode) throws IOException {
+        final TableContents tableContents = TableContents.open(tableFile, blockCache, readMode);
+        this.file = new TableFile(tableFile);
+        this.uniqueID = getNameWithoutExtension(tableFile.getName());
+        this.level = parseLevel(uniqueID);
+        this.minTimeStamp = tableContents.getMetadata().getMinTimeStamp();
+        this.maxTimeStamp = tableContents.getMetadata().getMaxTimeStamp();
+        this.contents = () -> tableContents;
+        this.loaded = new AtomicReference<>(tableContents);
+        file.closeOnRelease(tableContents);
+    }
+
+    /**
+     * Creates a representation of data file which is read on first access.
+     * A file which turns out to be corrupted is treated as empty.
+     *
+     * @param tableFile  file with data
+     * @param blockCache cache for decompressed blocks and blocks read on demand
+     * @param readMode   how data blocks are read
+     * @param entry      table description from manifest
+     */
+    SSTable(final File tableFile,
+            final BlockCache blockCache,
+            final DAOConfig.ReadMode readMode,
+            final Manifest.Entry entry) {
+        this.file = new TableFile(tableFile);
+        this.uniqueID = entry.getName();
+        this.level = entry.getLevel();
+        this.minTimeStamp = entry.getMinTimeStamp();
+        this.maxTimeStamp = entry.getMaxTimeStamp();
+        this.loaded = new AtomicReference<>();
+        this.contents = Suppliers.memoize(() -> {
+            // The table may have been moved to another level before it is read
+            final File current = file.get();
+            TableContents tableContents;
+            try {
+                tableContents = TableContents.open(current, blockCache, readMode);
+                file.closeOnRelease(tableContents);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.error("Can't read SSTable: {}, treated as empty", current.getName(), e);
+                tableContents = TableContents.empty();
+            }
+            loaded.set(tableContents);
+            return tableContents;
+        });
+    }
+
+    private SSTable(final SSTable table, final int level) {
+        this.file = table.file;
+        this.uniqueID = withLevel(baseID(table.uniqueID), level);
+        this.level = level;
+        this.minTimeStamp = table.minTimeStamp;
+        this.maxTimeStamp = table.maxTimeStamp;
+        this.contents = table.contents;
+        this.loaded = table.loaded;
+    }
+
+    private static int parseLevel(final String uniqueID) {
+        final int separator = uniqueID.lastIndexOf(LEVEL_SEPARATOR);
+        if (separator < 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(uniqueID.substring(separator + LEVEL_SEPARATOR.length()));
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
     /**
-     * Writes new SSTable on disk.
-     * Format:
-     * [key size][key][timestamp] (if value exists [value size][value]) * n times
-     * at the end of file - [array of longs that contains offsets][offsets number]
+     * Generates unique ID of a new table, level of table is a part of its file name.
+     *
+     * @param level level of table, see {@link LeveledCompactionStrategy}
+     * @return unique ID
+     */
+    static String newUniqueID(final int level) {
+        return withLevel(UUID.randomUUID().toString(), level);
+    }
+
+    private static String withLevel(final String baseID, final int level) {
+        return level == 0 ? baseID : baseID + LEVEL_SEPARATOR + level;
+    }
+
+    /**
+     * Returns unique ID without level, it stays the same when table is moved to another level.
+     *
+     * @param uniqueID unique ID of table
+     * @return unique ID without level
+     */
+    static String baseID(final String uniqueID) {
+        final int separator = uniqueID.lastIndexOf(LEVEL_SEPARATOR);
+        return separator < 0 ? uniqueID : uniqueID.substring(0, separator);
+    }
+
+    /**
+     * Moves table to another level without rewriting it.
+     * The new instance has a new unique ID and shares file references with this one, holding a reference of its own.
+     * The file keeps the old name until {@link #completeMove()}, so the move should be recorded in manifest first.
+     *
+     * @param newLevel target level
+     * @return table at the new level, this instance should be released
+     */
+    SSTable moveTo(final int newLevel) {
+        file.retain();
+        return new SSTable(this, newLevel);
+    }
+
+    /**
+     * Renames file of a table created by {@link #moveTo(int)} according to its unique ID.
+     * A rename interrupted by crash is completed by {@link TableLoader}.
+     *
+     * @throws IOException if file can't be renamed
+     */
+    void completeMove() throws IOException {
+        file.moveTo(new File(file.get().getParentFile(), uniqueID + VALID_FILE_EXTENSTION));
+    }
+
+    /**
+     * Reads the table if it is opened lazily and hasn't been read yet.
+     */
+    void load() {
+        contents.get();
+    }
+
+    /**
+     * Pins the table for a reader, see {@link TableFile}.
+     *
+     * @return {@code false} if the table has been released already and can't be read
+     */
+    boolean retain() {
+        return file.retain();
+    }
+
+    void release() {
+        file.release();
+    }
+
+    /**
+     * Marks that the table has been merged, so its file is deleted after the last reader releases it,
+     * or at once if it has been released already.
+     */
+    void markObsolete() {
+        file.markObsolete();
+    }
+
+    boolean isReleased() {
+        return file.isReleased();
+    }
+
+    void deleteIfObsolete() {
+        file.deleteIfObsolete();
+    }
+
+    /**
+     * Returns level of this table, tables written by flush and size-tiered compaction are at level 0.
+     *
+     * @return level
+     */
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Writes new SSTable on disk in the current format, see {@link SSTableWriter}.
      *
      * @param items       iterator of data that should be written
      * @param ssTablesDir data files directory
-     * @param uniqueID table unique ID
+     * @param uniqueID    table unique ID
+     * @param config      storage parameters
      * @return path of new file
      * @throws IOException if something went wrong during writing
      */
     static Path writeNewTable(final Iterator<Item> items,
                               final File ssTablesDir,
-                              final String uniqueID) throws IOException {
-        final List<Long> offsets = new ArrayList<>();
-        long offset = 0;
-        offsets.add(offset);
-        final String fileName = uniqueID + TEMP_FILE_EXTENSTION;
-        final String fileNameComplete = uniqueID + VALID_FILE_EXTENSTION;
-        final Path path = ssTablesDir.toPath().resolve(Paths.get(fileName));
-        final Path pathComplete = ssTablesDir.toPath().resolve(Paths.get(fileNameComplete));
-        Item item;
-        try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(path,
-                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
-            while (items.hasNext()) {
-                item = items.next();
-                final ByteBuffer key = item.getKey();
-                final ByteBuffer value = item.getValue();
-                final ByteBuffer row = ByteBuffer.allocate(item.getSizeInBytes());
-                row.putInt(key.remaining()).put(key.duplicate()).putLong(item.getTimeStamp());
-                if (!item.isRemoved()) {
-                    row.putLong(value.remaining()).put(value.duplicate());
-                }
-                offset += item.getSizeInBytes();
-                offsets.add(offset);
-                row.flip();
-                fileChannel.write(row);
-            }
-            final int offsetsCount = offsets.size();
-            offsets.set(offsetsCount - 1, (long) offsetsCount - 1);
-            final ByteBuffer offsetsByteBuffer = ByteBuffer.allocate(offsetsCount * Long.BYTES);
-            for (final Long i : offsets) {
-                offsetsByteBuffer.putLong(i);
-            }
-            offsetsByteBuffer.flip();
-            fileChannel.write(offsetsByteBuffer);
-            Files.move(path, pathComplete, StandardCopyOption.ATOMIC_MOVE);
-        }
-        return pathComplete;
+                              final String uniqueID,
+                              final DAOConfig config) throws IOException {
+        return writeNewTable(items, ssTablesDir, uniqueID, config, new IoRateLimiter(0));
     }
 
-    private ByteBuffer getRecord(final long index) {
-        final long offset = offsets.get((int) index);
-        long recordLimit;
-        if (index == recordsAmount - 1) {
-            recordLimit = records.limit();
-        } else {
-            recordLimit = offsets.get((int) index + 1);
-        }
-        return records.duplicate().position((int) offset).limit((int) recordLimit).slice().asReadOnlyBuffer();
+    /**
+     * Writes new SSTable on disk in the current format at rate allowed by given limiter.
+     *
+     * @param items       iterator of data that should be written
+     * @param ssTablesDir data files directory
+     * @param uniqueID    table unique ID
+     * @param config      storage parameters
+     * @param limiter     limiter of background I/O
+     * @return path of new file
+     * @throws IOException if something went wrong during writing
+     */
+    static Path writeNewTable(final Iterator<Item> items,
+                              final File ssTablesDir,
+                              final String uniqueID,
+                              final DAOConfig config,
+                              final IoRateLimiter limiter) throws IOException {
+        return SSTableWriter.write(items, ssTablesDir, uniqueID, config, limiter);
     }
 
-    private ByteBuffer getKey(final ByteBuffer record) {
-        final ByteBuffer rec = record.duplicate();
-        final int keySize = rec.getInt();
-        return rec.limit(Integer.BYTES + keySize).slice().asReadOnlyBuffer();
+    /**
+     * Returns the newest version of given key stored in this table.
+     *
+     * @param key key to look for
+     * @return item or {@code null} if table doesn't contain the key
+     */
+    @Nullable
+    @Override
+    public Item getLatest(@NotNull final ByteBuffer key) {
+        return contents.get().getReader().get(key);
     }
 
-    private long getTimeStamp(final ByteBuffer record) {
-        final ByteBuffer rec = record.duplicate();
-        rec.position(Integer.BYTES + rec.getInt());
-        return rec.getLong();
+    /**
+     * Returns the greatest absolute timestamp of items in this table.
+     * Tables flushed later always have greater value, so it is used to order tables by recency.
+     * Tables written before it was stored return {@link Long#MAX_VALUE}.
+     *
+     * @return timestamp
+     */
+    long getMaxTimeStamp() {
+        return maxTimeStamp;
     }
 
-    private ByteBuffer getValue(final ByteBuffer record) {
-        final ByteBuffer rec = record.duplicate();
-        final int keySize = rec.getInt();
-        return rec.position(Integer.BYTES + keySize + Long.BYTES * 2).slice().asReadOnlyBuffer();
+    /**
+     * Returns the smallest absolute timestamp of items in this table, it is known without reading the table.
+     *
+     * @return timestamp, 0 for tables written before it was stored
+     */
+    long getMinTimeStamp() {
+        return minTimeStamp;
     }
 
-    private Item getItem(final long pos) {
-        final ByteBuffer rec = getRecord(pos);
-        final ByteBuffer key = getKey(rec);
-        final long timeStamp = getTimeStamp(rec);
-        ByteBuffer value;
-        if (timeStamp < 0) {
-            value = Item.TOMBSTONE;
-        } else {
-            value = getValue(rec);
-        }
-        return Item.of(key, value, timeStamp);
-    }
-
-    private long getPosition(final ByteBuffer key) {
-        long left = 0;
-        long right = recordsAmount - 1;
-        while (left <= right) {
-            final long mid = left + (right - left) / 2;
-            final int compare = getKey(getRecord(mid)).compareTo(key);
-            if (compare > 0) {
-                right = mid - 1;
-            } else if (compare < 0) {
-                left = mid + 1;
-            } else {
-                return mid;
-            }
-        }
-        return left;
+    /**
+     * Returns heap taken by Bloom filter and block index, a table which hasn't been read yet takes none.
+     *
+     * @return size in bytes
+     */
+    long residentBytes() {
+        final TableContents tableContents = loaded.get();
+        return tableContents == null ? 0 : tableContents.residentBytes();
+    }
+
+    /**
+     * Returns statistics of table contents.
+     *
+     * @return metadata
+     */
+    TableMetadata getMetadata() {
+        return contents.get().getMetadata();
+    }
+
+    /**
+     * Checks table key range and Bloom filter for given key.
+     * Tables written before filters and key ranges were stored always answer {@code true}.
+     *
+     * @param key key to look for
+     * @return {@code false} if table definitely doesn't contain the key
+     */
+    boolean mightContain(@NotNull final ByteBuffer key) {
+        final TableContents tableContents = contents.get();
+        final BloomFilter bloomFilter = tableContents.getBloomFilter();
+        return tableContents.getMetadata().mayContain(key) && (bloomFilter == null || bloomFilter.mightContain(key));
+    }
+
+    /**
+     * Checks whether table may have keys in [from, to) range.
+     *
+     * @param from the first key of range inclusive
+     * @param to   the last key of range exclusive, {@code null} means no bound
+     * @return {@code false} if table definitely has no keys in range
+     */
+    boolean overlaps(@NotNull final ByteBuffer from, @Nullable final ByteBuffer to) {
+        return contents.get().getMetadata().overlaps(from, to);
+    }
+
+    /**
+     * Returns keys spread evenly over the table, taken from its index.
+     *
+     * @param amount maximum amount of keys
+     * @return sorted keys
+     */
+    List<ByteBuffer> sampleKeys(final int amount) {
+        return contents.get().getReader().sampleKeys(amount);
     }
 
     /**
@@ -175,7 +345,7 @@ public final class SSTable implements Table {
      * @return file
      */
     File getTableFile() {
-        return tableFile;
+        return file.get();
     }
 
     /**
@@ -186,24 +356,7 @@ public final class SSTable implements Table {
      */
     @Override
     public Iterator<Item> iterator(@NotNull final ByteBuffer from) {
-        return new Iterator<>() {
-            long pos = getPosition(from);
-
-            @Override
-            public boolean hasNext() {
-                return pos < recordsAmount;
-            }
-
-            @Override
-            public Item next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("No more elements");
-                }
-                final Item item = getItem(pos);
-                pos++;
-                return item;
-            }
-        };
+        return contents.get().getReader().iterator(from);
     }
 
     @Override
@@ -211,14 +364,19 @@ public final class SSTable implements Table {
         return iterator(from);
     }
 
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return contents.get().getReader().cursor(from);
+    }
+
     @Override
     public long sizeInBytes() {
-        return tableFile.length();
+        return file.get().length();
     }
 
     @Override
     public String getUniqueID() {
-        return getNameWithoutExtension(tableFile.getName());
+        return uniqueID;
     }
 
     @Override
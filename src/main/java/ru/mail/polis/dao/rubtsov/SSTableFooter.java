@@ -0,0 +1,259 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Tail of SSTable file describing where its parts are located.
+ * Every table consists of [data][index][Bloom filter][metadata][footer] regions,
+ * for tables written before block format the index is an array of record offsets.
+ * Tables written before footers were introduced end with records amount instead of {@link #MAGIC}.
+ */
+final class SSTableFooter {
+    static final int LEGACY_VERSION = 0;
+    static final int BLOOM_VERSION = 1;
+    static final int TIMESTAMP_VERSION = 2;
+    static final int BLOCK_VERSION = 3;
+    static final int PREFIX_VERSION = 4;
+    static final int COMPRESSION_VERSION = 5;
+    static final int METADATA_VERSION = 6;
+    static final int KEY_ORDER_VERSION = 7;
+    static final int CURRENT_VERSION = KEY_ORDER_VERSION;
+
+    private static final long MAGIC = 0x4C534D5353544142L;
+    private static final int BLOOM_SIZE = Long.BYTES * 3 + Integer.BYTES * 2;
+    private static final int TIMESTAMP_SIZE = BLOOM_SIZE + Long.BYTES;
+    private static final int BLOCK_SIZE = TIMESTAMP_SIZE + Long.BYTES;
+    private static final int COMPRESSION_SIZE = BLOCK_SIZE + Integer.BYTES;
+    private static final int METADATA_SIZE = COMPRESSION_SIZE + Long.BYTES;
+    private static final int KEY_ORDER_SIZE = METADATA_SIZE + Integer.BYTES;
+
+    private final int version;
+    private final long maxTimeStamp;
+    private final long recordsAmount;
+    private final long indexPosition;
+    private final long bloomPosition;
+    private final int bloomHashCount;
+    private final long metadataPosition;
+    private final Compression compression;
+    private final KeyOrder keyOrder;
+
+    private SSTableFooter(final Builder builder) {
+        this.version = builder.version;
+        this.maxTimeStamp = builder.maxTimeStamp;
+        this.recordsAmount = builder.recordsAmount;
+        this.indexPosition = builder.indexPosition;
+        this.bloomPosition = builder.bloomPosition;
+        this.bloomHashCount = builder.bloomHashCount;
+        this.metadataPosition = builder.metadataPosition;
+        this.compression = builder.compression;
+        this.keyOrder = builder.keyOrder;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Reads footer of any known version from the end of given file.
+     * Regions missing in older versions are empty.
+     *
+     * @param file table file
+     * @return footer
+     * @throws IOException              if file can't be read
+     * @throws IllegalArgumentException if file is corrupted or has unknown version
+     */
+    static SSTableFooter read(final FileRegions file) throws IOException {
+        final long limit = file.size();
+        Preconditions.checkArgument(limit >= Long.BYTES);
+        final ByteBuffer tail = file.region(Math.max(0, limit - KEY_ORDER_SIZE), limit);
+        final int tailLimit = tail.limit();
+        if (tail.getLong(tailLimit - Long.BYTES) != MAGIC) {
+            final long recordsAmount = tail.getLong(tailLimit - Long.BYTES);
+            Preconditions.checkArgument(recordsAmount >= 0 && limit > recordsAmount * 21);
+            return builder()
+                    .version(LEGACY_VERSION)
+                    .recordsAmount(recordsAmount)
+                    .indexPosition(limit - Long.BYTES * (recordsAmount + 1))
+                    .bloomPosition(limit - Long.BYTES)
+                    .metadataPosition(limit - Long.BYTES)
+                    .build();
+        }
+        Preconditions.checkArgument(tailLimit >= BLOOM_SIZE);
+        final int version = tail.getInt(tailLimit - Long.BYTES - Integer.BYTES);
+        Preconditions.checkArgument(tailLimit >= sizeOf(version));
+        final long position = limit - sizeOf(version);
+        final ByteBuffer footer = tail.duplicate().position(tailLimit - sizeOf(version));
+        final Builder builder = builder()
+                .version(version)
+                .keyOrder(KeyOrder.of(version >= KEY_ORDER_VERSION ? footer.getInt() : 0))
+                .metadataPosition(version >= METADATA_VERSION ? footer.getLong() : position)
+                .compression(Compression.of(version >= COMPRESSION_VERSION ? footer.getInt() : 0))
+                .maxTimeStamp(version >= TIMESTAMP_VERSION ? footer.getLong() : Long.MAX_VALUE);
+        final long indexPosition = version >= BLOCK_VERSION ? footer.getLong() : -1;
+        final long recordsAmount = footer.getLong();
+        final long bloomPosition = footer.getLong();
+        Preconditions.checkArgument(recordsAmount >= 0 && bloomPosition <= builder.metadataPosition
+                && builder.metadataPosition <= position);
+        return builder
+                .recordsAmount(recordsAmount)
+                .indexPosition(indexPosition >= 0 ? indexPosition : bloomPosition - recordsAmount * Long.BYTES)
+                .bloomPosition(bloomPosition)
+                .bloomHashCount(footer.getInt())
+                .build();
+    }
+
+    private static int sizeOf(final int version) {
+        switch (version) {
+            case BLOOM_VERSION:
+                return BLOOM_SIZE;
+            case TIMESTAMP_VERSION:
+                return TIMESTAMP_SIZE;
+            case BLOCK_VERSION:
+            case PREFIX_VERSION:
+                return BLOCK_SIZE;
+            case COMPRESSION_VERSION:
+                return COMPRESSION_SIZE;
+            case METADATA_VERSION:
+                return METADATA_SIZE;
+            case KEY_ORDER_VERSION:
+                return KEY_ORDER_SIZE;
+            default:
+                throw new IllegalArgumentException("Unknown format version " + version);
+        }
+    }
+
+    void writeTo(final TableOutput output) throws IOException {
+        Preconditions.checkState(version == CURRENT_VERSION, "Only current version can be written");
+        output.writeInt(keyOrder.getId());
+        output.writeLong(metadataPosition);
+        output.writeInt(compression.getId());
+        output.writeLong(maxTimeStamp);
+        output.writeLong(indexPosition);
+        output.writeLong(recordsAmount);
+        output.writeLong(bloomPosition);
+        output.writeInt(bloomHashCount);
+        output.writeInt(version);
+        output.writeLong(MAGIC);
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the greatest absolute timestamp of items in table,
+     * {@link Long#MAX_VALUE} if table was written before it was stored.
+     */
+    long getMaxTimeStamp() {
+        return maxTimeStamp;
+    }
+
+    long getRecordsAmount() {
+        return recordsAmount;
+    }
+
+    long getIndexPosition() {
+        return indexPosition;
+    }
+
+    long getBloomPosition() {
+        return bloomPosition;
+    }
+
+    int getBloomHashCount() {
+        return bloomHashCount;
+    }
+
+    /**
+     * Returns position of metadata region, which also ends Bloom filter region.
+     * The region is empty for tables written before metadata was stored.
+     */
+    long getMetadataPosition() {
+        return metadataPosition;
+    }
+
+    /**
+     * Returns position where footer starts in file of given size.
+     *
+     * @param fileSize size of the whole file
+     * @return footer position
+     */
+    long getPosition(final long fileSize) {
+        return version == LEGACY_VERSION ? fileSize - Long.BYTES : fileSize - sizeOf(version);
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    boolean hasBloomFilter() {
+        return version >= BLOOM_VERSION;
+    }
+
+    static final class Builder {
+        private int version = CURRENT_VERSION;
+        private long maxTimeStamp = Long.MAX_VALUE;
+        private long recordsAmount;
+        private long indexPosition;
+        private long bloomPosition;
+        private int bloomHashCount;
+        private long metadataPosition;
+        private Compression compression = Compression.NONE;
+        private KeyOrder keyOrder = KeyOrder.SIGNED;
+
+        private Builder() {
+        }
+
+        Builder version(final int version) {
+            this.version = version;
+            return this;
+        }
+
+        Builder maxTimeStamp(final long maxTimeStamp) {
+            this.maxTimeStamp = maxTimeStamp;
+            return this;
+        }
+
+        Builder recordsAmount(final long recordsAmount) {
+            this.recordsAmount = recordsAmount;
+            return this;
+        }
+
+        Builder indexPosition(final long indexPosition) {
+            this.indexPosition = indexPosition;
+            return this;
+        }
+
+        Builder bloomPosition(final long bloomPosition) {
+            this.bloomPosition = bloomPosition;
+            return this;
+        }
+
+        Builder bloomHashCount(final int bloomHashCount) {
+            this.bloomHashCount = bloomHashCount;
+            return this;
+        }
+
+        Builder metadataPosition(final long metadataPosition) {
+            this.metadataPosition = metadataPosition;
+            return this;
+        }
+
+        Builder compression(final Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        Builder keyOrder(final KeyOrder keyOrder) {
+            this.keyOrder = keyOrder;
+            return this;
+        }
+
+        SSTableFooter build() {
+            return new SSTableFooter(this);
+        }
+    }
+}
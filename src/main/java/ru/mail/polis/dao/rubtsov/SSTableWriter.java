@@ -0,0 +1,102 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Writes SSTables in block format.
+ * Format:
+ * [data blocks][block index][Bloom filter words][metadata][footer], see {@link BlockBuilder},
+ * {@link BlockIndex}, {@link TableMetadata} and {@link SSTableFooter} for details.
+ * A block is closed as soon as the next record doesn't fit into configured block size,
+ * so only records larger than block size make blocks exceed it.
+ * Index stores the shortest separator between blocks instead of the whole first key,
+ * so tables with huge keys still have small index.
+ * Blocks are compressed one by one with configured {@link Compression}, so a read touches a single block.
+ * Everything goes through buffered {@link TableOutput}, Bloom filter hashes are kept in a primitive array.
+ */
+final class SSTableWriter {
+    private static final int RESTART_INTERVAL = 16;
+
+    private SSTableWriter() {
+    }
+
+    /**
+     * Writes new SSTable on disk.
+     *
+     * @param items       iterator of data that should be written
+     * @param ssTablesDir data files directory
+     * @param uniqueID    table unique ID
+     * @param config      storage parameters
+     * @param limiter     limiter of background I/O
+     * @return path of new file
+     * @throws IOException if something went wrong during writing
+     */
+    static Path write(final Iterator<Item> items,
+                      final File ssTablesDir,
+                      final String uniqueID,
+                      final DAOConfig config,
+                      final IoRateLimiter limiter) throws IOException {
+        final Path path = ssTablesDir.toPath().resolve(Paths.get(uniqueID + SSTable.TEMP_FILE_EXTENSTION));
+        final Path pathComplete = ssTablesDir.toPath().resolve(Paths.get(uniqueID + SSTable.VALID_FILE_EXTENSTION));
+        final int blockSize = config.getBlockSize();
+        final Compression compression = config.getCompression();
+        final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        final DataOutputStream index = new DataOutputStream(indexBytes);
+        final LongArray keyHashes = new LongArray(1024);
+        final BlockBuilder block = new BlockBuilder(blockSize, RESTART_INTERVAL);
+        final TableMetadata.Collector metadata = new TableMetadata.Collector();
+        byte[] separator = new byte[0];
+        try (TableOutput output = new TableOutput(path, limiter)) {
+            while (items.hasNext()) {
+                final Item item = items.next();
+                final ByteBuffer key = item.getKey();
+                if (!block.isEmpty() && block.sizeWith(item) > blockSize) {
+                    separator = block.separator(key);
+                    output.write(encode(block.finish(), compression));
+                    block.reset();
+                }
+                if (block.isEmpty()) {
+                    index.writeInt(separator.length);
+                    index.write(separator);
+                    index.writeLong(output.position());
+                }
+                block.add(item);
+                keyHashes.add(BloomFilter.hash(key));
+                metadata.add(item);
+            }
+            if (!block.isEmpty()) {
+                output.write(encode(block.finish(), compression));
+            }
+            final BloomFilter bloomFilter = BloomFilter.create(keyHashes.size(), config.getBloomFalsePositiveRate());
+            for (int i = 0; i < keyHashes.size(); i++) {
+                bloomFilter.put(keyHashes.get(i));
+            }
+            final SSTableFooter.Builder footer = SSTableFooter.builder()
+                    .maxTimeStamp(metadata.getMaxTimeStamp())
+                    .recordsAmount(metadata.getRecordsAmount())
+                    .compression(compression)
+                    .indexPosition(output.position());
+            indexBytes.writeTo(output);
+            footer.bloomPosition(output.position()).bloomHashCount(bloomFilter.getHashCount());
+            bloomFilter.writeTo(output);
+            footer.metadataPosition(output.position());
+            metadata.writeTo(output);
+            footer.build().writeTo(output);
+        }
+        Files.move(path, pathComplete, StandardCopyOption.ATOMIC_MOVE);
+        return pathComplete;
+    }
+
+    private static ByteBuffer encode(final ByteBuffer block, final Compression compression) {
+        return compression == Compression.NONE ? block : compression.pack(block);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Merges runs of tables of similar size.
+ * A run is a group of adjacent tables each of which differs from the average size of previous ones
+ * no more than {@code sizeRatio} times, tables smaller than {@code minTableSize} are treated as equal.
+ * Among runs of at least {@code minThreshold} tables the one with the smallest average size is chosen,
+ * so fresh small tables are merged first and every table is rewritten a logarithmic number of times.
+ * Selected tables are adjacent in recency order, so merged table covers a continuous period of time.
+ * Runs of tables with disjoint key ranges, like tables left by leveled compaction, are skipped,
+ * as merging them doesn't reduce amount of tables a read checks.
+ * All tables are kept at level 0.
+ */
+final class SizeTieredCompactionStrategy implements CompactionStrategy {
+    private final int minThreshold;
+    private final int maxThreshold;
+    private final double sizeRatio;
+    private final long minTableSize;
+
+    SizeTieredCompactionStrategy(final int minThreshold,
+                                 final int maxThreshold,
+                                 final double sizeRatio,
+                                 final long minTableSize) {
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.sizeRatio = sizeRatio;
+        this.minTableSize = minTableSize;
+    }
+
+    @Nullable
+    @Override
+    public CompactionTask select(@NotNull final List<SSTable> tables) {
+        int bestStart = 0;
+        int bestEnd = 0;
+        double bestAverage = Double.MAX_VALUE;
+        for (int start = 0; start + minThreshold <= tables.size(); start++) {
+            long total = size(tables.get(start));
+            int end = start + 1;
+            while (end < tables.size() && end - start < maxThreshold
+                    && isSimilar(size(tables.get(end)), (double) total / (end - start))) {
+                total += size(tables.get(end));
+                end++;
+            }
+            final double average = (double) total / (end - start);
+            if (end - start >= minThreshold && average < bestAverage && overlap(tables.subList(start, end))) {
+                bestStart = start;
+                bestEnd = end;
+                bestAverage = average;
+            }
+        }
+        if (bestEnd == 0) {
+            return null;
+        }
+        return CompactionTask.merge(tables.subList(bestStart, bestEnd), 0, bestEnd - bestStart == tables.size(),
+                CompactionTask.UNLIMITED_TABLE_SIZE);
+    }
+
+    @NotNull
+    @Override
+    public CompactionTask selectAll(@NotNull final List<SSTable> tables) {
+        return CompactionTask.merge(tables, 0, true, CompactionTask.UNLIMITED_TABLE_SIZE);
+    }
+
+    private static boolean overlap(final List<SSTable> run) {
+        for (int i = 0; i < run.size(); i++) {
+            for (int j = i + 1; j < run.size(); j++) {
+                if (run.get(i).getMetadata().overlaps(run.get(j).getMetadata())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private long size(final SSTable table) {
+        return Math.max(minTableSize, table.sizeInBytes());
+    }
+
+    private boolean isSimilar(final long size, final double average) {
+        return size <= average * sizeRatio && size * sizeRatio >= average;
+    }
+}
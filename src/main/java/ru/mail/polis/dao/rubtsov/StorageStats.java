@@ -0,0 +1,98 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of storage amplification.
+ * Write amplification is the ratio of bytes written by flushes and compactions to bytes written by flushes,
+ * read amplification is the average amount of SSTables probed by a point read which reached disk.
+ * Writes delayed or rejected by {@link WriteStallController} are counted too,
+ * as well as all writes and point reads which reached disk, {@link MemoryBudget} is tuned by them.
+ */
+public final class StorageStats {
+    private final LongAdder flushedBytes = new LongAdder();
+    private final LongAdder compactedBytes = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder pointReads = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder stallNanos = new LongAdder();
+    private final LongAdder rejectedWrites = new LongAdder();
+
+    StorageStats() {
+    }
+
+    void flushed(final long bytes) {
+        flushedBytes.add(bytes);
+    }
+
+    void compacted(final long bytes) {
+        compactedBytes.add(bytes);
+    }
+
+    void written() {
+        writes.increment();
+    }
+
+    void pointRead(final int probes) {
+        pointReads.increment();
+        tableProbes.add(probes);
+    }
+
+    void stalled(final long nanos) {
+        stallNanos.add(nanos);
+    }
+
+    void rejected() {
+        rejectedWrites.increment();
+    }
+
+    public long getFlushedBytes() {
+        return flushedBytes.sum();
+    }
+
+    public long getCompactedBytes() {
+        return compactedBytes.sum();
+    }
+
+    /**
+     * Returns total time writes were delayed by background work debt.
+     *
+     * @return stall time in milliseconds
+     */
+    public long getStallTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.sum());
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getPointReads() {
+        return pointReads.sum();
+    }
+
+    public long getRejectedWrites() {
+        return rejectedWrites.sum();
+    }
+
+    /**
+     * Returns how many bytes were written to disk per byte flushed from memory.
+     *
+     * @return write amplification, 0 if nothing was flushed
+     */
+    public double writeAmplification() {
+        final long flushed = flushedBytes.sum();
+        return flushed == 0 ? 0 : (double) (flushed + compactedBytes.sum()) / flushed;
+    }
+
+    /**
+     * Returns average amount of SSTables searched by a point read.
+     *
+     * @return read amplification, 0 if there were no reads from disk
+     */
+    public double readAmplification() {
+        final long reads = pointReads.sum();
+        return reads == 0 ? 0 : (double) tableProbes.sum() / reads;
+    }
+}
@@ -1,7 +1,9 @@
 package ru.mail.polis.dao.rubtsov;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 
@@ -18,15 +20,28 @@ public interface Table {
 
     Iterator<Item> latestIterator(@NotNull final ByteBuffer from);
 
+    /**
+     * Get cursor over the newest version of every key, tombstones included. Starts from given key.
+     */
+    TableCursor cursor(@NotNull ByteBuffer from);
+
+    /**
+     * Get the newest entry with exactly given key, tombstones included.
+     *
+     * @return entry or {@code null} if table has no such key
+     */
+    @Nullable
+    Item getLatest(@NotNull ByteBuffer key);
+
     /**
      * Put an entry in table.
      */
-    void upsert(@NotNull ByteBuffer key, @NotNull ByteBuffer value);
+    void upsert(@NotNull ByteBuffer key, @NotNull ByteBuffer value) throws IOException;
 
     /**
      * Remove an entry from table.
      */
-    void remove(@NotNull ByteBuffer key);
+    void remove(@NotNull ByteBuffer key) throws IOException;
 
     /**
      * Get the unique identifier associated with the table.
@@ -0,0 +1,224 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.io.Files.getNameWithoutExtension;
+
+/**
+ * Contents of an SSTable file: metadata, Bloom filter and reader of records.
+ * Bloom filter and block index are loaded into heap and stay there while the table is open,
+ * data blocks are either mapped or read on demand into {@link BlockCache}, see {@link DAOConfig.ReadMode}.
+ */
+final class TableContents implements Closeable {
+    private final TableMetadata metadata;
+    @Nullable
+    private final BloomFilter bloomFilter;
+    private final TableReader reader;
+    private final long residentBytes;
+    @Nullable
+    private final Closeable file;
+
+    private TableContents(final TableMetadata metadata,
+                          @Nullable final BloomFilter bloomFilter,
+                          final TableReader reader,
+                          final long residentBytes,
+                          @Nullable final Closeable file) {
+        this.metadata = metadata;
+        this.bloomFilter = bloomFilter;
+        this.reader = reader;
+        this.residentBytes = residentBytes;
+        this.file = file;
+    }
+
+    /**
+     * Maps table file and reads its footer, index, Bloom filter and metadata.
+     *
+     * @param tableFile  file with data
+     * @param blockCache cache for decompressed blocks
+     * @return contents
+     * @throws IOException              if file can't be read
+     * @throws IllegalArgumentException if file corrupted
+     */
+    static TableContents open(@NotNull final File tableFile, @NotNull final BlockCache blockCache) throws IOException {
+        return open(tableFile, blockCache, DAOConfig.ReadMode.MMAP);
+    }
+
+    /**
+     * Opens table file in given mode and reads its footer, index, Bloom filter and metadata.
+     * Tables written before data blocks were introduced are always mapped.
+     *
+     * @param tableFile  file with data
+     * @param blockCache cache for decompressed blocks and blocks read on demand
+     * @param readMode   how data blocks are read
+     * @return contents, which should be closed once the table is released
+     * @throws IOException              if file can't be read
+     * @throws IllegalArgumentException if file corrupted
+     */
+    static TableContents open(@NotNull final File tableFile,
+                              @NotNull final BlockCache blockCache,
+                              @NotNull final DAOConfig.ReadMode readMode) throws IOException {
+        final String tableID = getNameWithoutExtension(tableFile.getName());
+        if (readMode == DAOConfig.ReadMode.PREAD) {
+            final ChannelFile file = ChannelFile.open(tableFile);
+            try {
+                final SSTableFooter footer = SSTableFooter.read(file);
+                if (footer.getVersion() >= SSTableFooter.BLOCK_VERSION) {
+                    return read(file, footer, readBlocks(file, footer, tableID, blockCache), file);
+                }
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+            file.close();
+        }
+        try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(
+                tableFile.toPath(), StandardOpenOption.READ)) {
+            return map(MappedFile.map(fileChannel), tableID, blockCache);
+        }
+    }
+
+    /**
+     * Maps table file by segments of given size and reads its footer, index, Bloom filter and metadata.
+     *
+     * @param tableFile   file with data
+     * @param blockCache  cache for decompressed blocks
+     * @param segmentSize size of a mapped segment, see {@link MappedFile}
+     * @return contents
+     * @throws IOException              if file can't be read
+     * @throws IllegalArgumentException if file corrupted
+     */
+    static TableContents map(@NotNull final File tableFile,
+                             @NotNull final BlockCache blockCache,
+                             final long segmentSize) throws IOException {
+        try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(
+                tableFile.toPath(), StandardOpenOption.READ)) {
+            return map(MappedFile.map(fileChannel, segmentSize), getNameWithoutExtension(tableFile.getName()),
+                    blockCache);
+        }
+    }
+
+    private static TableContents map(final MappedFile file,
+                                     final String tableID,
+                                     final BlockCache blockCache) throws IOException {
+        final SSTableFooter footer = SSTableFooter.read(file);
+        return read(file, footer, mappedBlocks(file, footer, tableID, blockCache), null);
+    }
+
+    private static BlockSource mappedBlocks(final MappedFile file,
+                                            final SSTableFooter footer,
+                                            final String tableID,
+                                            final BlockCache blockCache) {
+        if (footer.getCompression() == Compression.NONE) {
+            return (index, block) -> index.region(file, block);
+        }
+        return (index, block) -> blockCache.get(tableID, index.blockStart(block),
+                () -> Compression.unpack(index.region(file, block)));
+    }
+
+    private static BlockSource readBlocks(final ChannelFile file,
+                                          final SSTableFooter footer,
+                                          final String tableID,
+                                          final BlockCache blockCache) {
+        final boolean compressed = footer.getCompression() != Compression.NONE;
+        return (index, block) -> blockCache.get(tableID, index.blockStart(block), () -> {
+            try {
+                return compressed
+                        ? Compression.unpack(file.region(index.blockStart(block), index.blockEnd(block)))
+                        : file.block(index.blockStart(block), index.blockEnd(block));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static TableContents read(final FileRegions file,
+                                      final SSTableFooter footer,
+                                      final BlockSource blocks,
+                                      @Nullable final Closeable resource) throws IOException {
+        final long indexPosition = footer.getIndexPosition();
+        final long bloomPosition = footer.getBloomPosition();
+        BloomFilter bloomFilter = null;
+        if (footer.hasBloomFilter()) {
+            bloomFilter = BloomFilter.read(file.region(bloomPosition, footer.getMetadataPosition()),
+                    footer.getBloomHashCount());
+        }
+        final TableMetadata metadata;
+        if (footer.getVersion() >= SSTableFooter.METADATA_VERSION) {
+            metadata = TableMetadata.read(file.region(footer.getMetadataPosition(),
+                    footer.getPosition(file.size())), footer.getVersion());
+        } else {
+            metadata = TableMetadata.of(footer);
+        }
+        final ByteBuffer index = file.region(indexPosition, bloomPosition);
+        final TableReader reader;
+        long residentBytes = bloomFilter == null ? 0 : bloomFilter.sizeInBytes();
+        if (footer.getVersion() >= SSTableFooter.BLOCK_VERSION) {
+            final BlockIndex blockIndex = BlockIndex.read(index, indexPosition);
+            residentBytes += blockIndex.sizeInBytes();
+            reader = new BlockTableReader(blockIndex, block -> blocks.get(blockIndex, block),
+                    footer.getVersion() >= SSTableFooter.PREFIX_VERSION);
+        } else {
+            reader = new OffsetsTableReader(file.region(0, indexPosition), index, footer.getRecordsAmount());
+        }
+        return new TableContents(metadata, bloomFilter, reader, residentBytes, resource);
+    }
+
+    /**
+     * Returns contents of a table which can't be read, it has no records.
+     *
+     * @return contents
+     */
+    static TableContents empty() {
+        final ByteBuffer empty = ByteBuffer.allocate(0);
+        return new TableContents(TableMetadata.empty(), null, new OffsetsTableReader(empty, empty, 0), 0, null);
+    }
+
+    TableMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Nullable
+    BloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    TableReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Returns heap taken by Bloom filter and block index.
+     *
+     * @return size in bytes
+     */
+    long residentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Closes file read on demand, mapping is left to GC.
+     *
+     * @throws IOException if file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlockSource {
+        ByteBuffer get(BlockIndex index, int block);
+    }
+}
@@ -0,0 +1,45 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable position over records of a table in key order.
+ * Key and timestamp of current record are read in place, so tables are merged without materializing
+ * records which are shadowed by newer versions or filtered out, only the winner becomes an {@link Item}.
+ * Buffers returned by a cursor are views it reuses, they are valid until the cursor moves.
+ */
+public interface TableCursor {
+    /**
+     * Check whether cursor points to a record.
+     */
+    boolean isValid();
+
+    /**
+     * Move to the next record.
+     */
+    void next();
+
+    /**
+     * Get key of current record, the view is reused by the cursor.
+     */
+    ByteBuffer key();
+
+    /**
+     * Get timestamp of current record, negative for tombstones.
+     */
+    long timeStamp();
+
+    /**
+     * Get size of value of current record, zero for tombstones.
+     */
+    int valueSize();
+
+    /**
+     * Materialize current record, it stays valid after the cursor moves.
+     */
+    Item item();
+
+    default boolean isRemoved() {
+        return timeStamp() < 0;
+    }
+}
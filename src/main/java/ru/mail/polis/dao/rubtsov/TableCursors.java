@@ -0,0 +1,102 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Adapters between {@link TableCursor}s and iterators of {@link Item}s, and merge of cursors.
+ */
+final class TableCursors {
+    private TableCursors() {
+    }
+
+    /**
+     * Returns iterator materializing records of given cursor, the cursor is moved by the iterator.
+     *
+     * @param cursor source cursor
+     * @return iterator over items
+     */
+    static Iterator<Item> items(@NotNull final TableCursor cursor) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.isValid();
+            }
+
+            @Override
+            public Item next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more elements");
+                }
+                final Item item = cursor.item();
+                cursor.next();
+                return item;
+            }
+        };
+    }
+
+    /**
+     * Returns cursor over items which already exist, like ones of a memtable.
+     *
+     * @param items items in key order
+     * @return cursor
+     */
+    static TableCursor of(@NotNull final Iterator<Item> items) {
+        return new ItemCursor(items);
+    }
+
+    /**
+     * Merges cursors into a cursor over the newest version of every key.
+     *
+     * @param sources     cursors, a source goes earlier than older ones when versions have equal timestamps
+     * @param withRemoved whether tombstones are kept
+     * @return merged cursor, it moves the sources
+     */
+    static TableCursor merge(@NotNull final List<TableCursor> sources, final boolean withRemoved) {
+        return new MergingCursor(sources, withRemoved);
+    }
+
+    private static final class ItemCursor implements TableCursor {
+        private final Iterator<Item> items;
+        private Item current;
+
+        ItemCursor(final Iterator<Item> items) {
+            this.items = items;
+            next();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @Override
+        public void next() {
+            current = items.hasNext() ? items.next() : null;
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return current.getKey();
+        }
+
+        @Override
+        public long timeStamp() {
+            return current.getTimeStamp();
+        }
+
+        @Override
+        public int valueSize() {
+            return current.getValue().remaining();
+        }
+
+        @Override
+        public Item item() {
+            return current;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Writes new SSTables into storage directory and opens them.
+ * Background I/O of flushes and compactions is throttled by the shared {@link IoRateLimiter}.
+ */
+final class TableFactory {
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final File ssTablesDir;
+    private final DAOConfig config;
+    private final BlockCache blockCache;
+    private final IoRateLimiter limiter;
+
+    TableFactory(@NotNull final File ssTablesDir,
+                 @NotNull final DAOConfig config,
+                 @NotNull final BlockCache blockCache,
+                 @NotNull final IoRateLimiter limiter) {
+        this.ssTablesDir = ssTablesDir;
+        this.config = config;
+        this.blockCache = blockCache;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Writes a new table and opens it.
+     *
+     * @param items    items to write
+     * @param uniqueID table unique ID
+     * @return new table
+     * @throws IOException if table can't be written
+     */
+    SSTable write(@NotNull final Iterator<Item> items, @NotNull final String uniqueID) throws IOException {
+        final Path path = SSTable.writeNewTable(items, ssTablesDir, uniqueID, config, limiter);
+        return open(path.toFile());
+    }
+
+    /**
+     * Opens an existing table.
+     *
+     * @param file table file
+     * @return table
+     * @throws IOException              if file can't be read
+     * @throws IllegalArgumentException if file is corrupted
+     */
+    SSTable open(@NotNull final File file) throws IOException {
+        return new SSTable(file, blockCache, config.getReadMode());
+    }
+
+    /**
+     * Creates table listed in manifest which is read on first access.
+     *
+     * @param file  table file
+     * @param entry table description from manifest
+     * @return table
+     */
+    SSTable openLazily(@NotNull final File file, @NotNull final Manifest.Entry entry) {
+        return new SSTable(file, blockCache, config.getReadMode(), entry);
+    }
+
+    /**
+     * Throttles background reading of a table, tokens are taken in chunks to keep overhead low.
+     * Every record passed by the cursor is paid for, including versions which lose the merge.
+     *
+     * @param cursor cursor over a table
+     * @return cursor over the same records
+     */
+    TableCursor throttle(@NotNull final TableCursor cursor) {
+        if (!limiter.isEnabled()) {
+            return cursor;
+        }
+        return new ThrottledCursor(cursor);
+    }
+
+    private final class ThrottledCursor implements TableCursor {
+        private final TableCursor cursor;
+        private long unpaid;
+
+        ThrottledCursor(final TableCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean isValid() {
+            return cursor.isValid();
+        }
+
+        @Override
+        public void next() {
+            unpaid += Integer.BYTES + cursor.key().remaining() + Long.BYTES
+                    + (cursor.isRemoved() ? 0 : Long.BYTES + cursor.valueSize());
+            cursor.next();
+            if (unpaid >= READ_CHUNK_SIZE || !cursor.isValid()) {
+                limiter.acquire(unpaid);
+                unpaid = 0;
+            }
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return cursor.key();
+        }
+
+        @Override
+        public long timeStamp() {
+            return cursor.timeStamp();
+        }
+
+        @Override
+        public int valueSize() {
+            return cursor.valueSize();
+        }
+
+        @Override
+        public Item item() {
+            return cursor.item();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File of an SSTable which counts references to it, the table set holds one and every reader pins one.
+ * Obsolete file is deleted as soon as the last reference is released.
+ * Mapping is not unmapped explicitly: values are handed to callers without copying,
+ * so it is freed by GC once no buffer refers to it.
+ * A table moved to another level keeps the same file, which is renamed once the move is recorded.
+ * Channel of a table read on demand is closed once the last reference is released.
+ */
+final class TableFile {
+    private final Logger logger = LoggerFactory.getLogger(TableFile.class);
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile File file;
+    private volatile boolean obsolete;
+    @Nullable
+    private Closeable resource;
+
+    TableFile(@NotNull final File file) {
+        this.file = file;
+    }
+
+    File get() {
+        return file;
+    }
+
+    /**
+     * Pins the file.
+     *
+     * @return {@code false} if the file has been released already and can't be used
+     */
+    boolean retain() {
+        while (true) {
+            final int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference and deletes obsolete file if it was the last one.
+     */
+    void release() {
+        final int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            closeResource();
+            if (obsolete) {
+                delete();
+            }
+        }
+    }
+
+    /**
+     * Registers a resource reading the file, it is closed at once if the file has been released already.
+     *
+     * @param resource resource to close
+     */
+    void closeOnRelease(@NotNull final Closeable resource) {
+        synchronized (this) {
+            this.resource = resource;
+        }
+        if (isReleased()) {
+            closeResource();
+        }
+    }
+
+    private void closeResource() {
+        final Closeable current;
+        synchronized (this) {
+            current = resource;
+            resource = null;
+        }
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.error("Can't close file: {}", file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks that data of the file is not needed anymore, e.g. it has been merged into another table.
+     * The file is deleted at once if it has been released already.
+     */
+    void markObsolete() {
+        obsolete = true;
+        if (isReleased()) {
+            delete();
+        }
+    }
+
+    boolean isReleased() {
+        return references.get() <= 0;
+    }
+
+    /**
+     * Deletes obsolete file regardless of references, used on close, mapped data stays readable on POSIX systems.
+     */
+    void deleteIfObsolete() {
+        if (obsolete) {
+            delete();
+        }
+    }
+
+    private void delete() {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.error("Can't remove old file: {}", file.getName(), e);
+        }
+    }
+
+    /**
+     * Renames the file.
+     *
+     * @param target new file
+     * @throws IOException if file can't be renamed
+     */
+    synchronized void moveTo(@NotNull final File target) throws IOException {
+        Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+    }
+}
@@ -0,0 +1,131 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.io.Files.getNameWithoutExtension;
+
+/**
+ * Restores tables of data directory on startup.
+ * Tables listed in {@link Manifest} are opened lazily, so startup only replays the manifest,
+ * and then they are read in parallel in background. Table files not listed there are leftovers
+ * of interrupted flushes and compactions, they are deleted as well as temporary files,
+ * except for tables moved to another level which were not renamed yet, their renames are completed.
+ * Directories written before manifest was introduced, or with corrupted one, are scanned
+ * and their tables are opened in parallel.
+ */
+final class TableLoader {
+    private final Logger logger = LoggerFactory.getLogger(TableLoader.class);
+    private final TableFactory tableFactory;
+    private final Path dir;
+
+    TableLoader(@NotNull final TableFactory tableFactory, @NotNull final File dir) {
+        this.tableFactory = tableFactory;
+        this.dir = dir.toPath();
+    }
+
+    /**
+     * Loads tables and starts a new manifest with them.
+     *
+     * @return set of live tables
+     * @throws IOException if data directory can't be read or manifest can't be written
+     */
+    TableSet load() throws IOException {
+        for (final Path file : list(SSTable.TEMP_FILE_EXTENSTION)) {
+            logger.info("Removing temporary file {}", file.getFileName());
+            Files.delete(file);
+        }
+        Map<String, Manifest.Entry> entries = null;
+        try {
+            entries = Manifest.replay(dir);
+        } catch (IllegalArgumentException e) {
+            logger.error("Manifest in {} is corrupted, tables are found by scanning", dir, e);
+        }
+        final List<SSTable> tables = entries == null ? scan() : open(entries);
+        return new TableSet(Manifest.create(dir, tables), tables);
+    }
+
+    private List<SSTable> open(final Map<String, Manifest.Entry> entries) throws IOException {
+        // Moved tables are listed by their new names, which don't differ from old ones but in level
+        final Map<String, String> moved = new HashMap<>();
+        for (final String name : entries.keySet()) {
+            if (!Files.exists(tablePath(name))) {
+                moved.put(SSTable.baseID(name), name);
+            }
+        }
+        for (final Path file : list(SSTable.VALID_FILE_EXTENSTION)) {
+            final String name = getNameWithoutExtension(file.getFileName().toString());
+            if (entries.containsKey(name)) {
+                continue;
+            }
+            final String movedName = moved.get(SSTable.baseID(name));
+            if (movedName == null) {
+                logger.info("Removing table {} which is not in manifest", file.getFileName());
+                Files.delete(file);
+            } else {
+                logger.info("Completing move of table {} to {}", name, movedName);
+                Files.move(file, tablePath(movedName), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        final List<SSTable> tables = new ArrayList<>(entries.size());
+        for (final Manifest.Entry entry : entries.values()) {
+            final File file = tablePath(entry.getName()).toFile();
+            if (file.exists()) {
+                tables.add(tableFactory.openLazily(file, entry));
+            } else {
+                logger.error("Table {} from manifest is missing", file.getName());
+            }
+        }
+        ForkJoinPool.commonPool().execute(() -> tables.parallelStream()
+                .filter(table -> !table.isReleased())
+                .forEach(SSTable::load));
+        return tables;
+    }
+
+    private Path tablePath(final String name) {
+        return dir.resolve(name + SSTable.VALID_FILE_EXTENSTION);
+    }
+
+    private List<SSTable> scan() throws IOException {
+        return list(SSTable.VALID_FILE_EXTENSTION).parallelStream()
+                .map(this::openOrSkip)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Nullable
+    private SSTable openOrSkip(final Path file) {
+        try {
+            return tableFactory.open(file.toFile());
+        } catch (IOException e) {
+            logger.error("Init of SSTable failed: {}", file.getFileName(), e);
+        } catch (IllegalArgumentException e) {
+            logger.error("File corrupted: {}, skipped.", file.getFileName(), e);
+        }
+        return null;
+    }
+
+    private List<Path> list(final String extension) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(extension))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Statistics of SSTable contents which are available without scanning it.
+ * Format:
+ * [records amount][tombstones amount][min timestamp][max timestamp][min key size][min key][max key size][max key],
+ * keys of an empty table have -1 size. Keys are not copied into heap, they refer to the table mapping.
+ * Tables written before metadata was stored have unknown key range and tombstones amount.
+ */
+public final class TableMetadata {
+    static final long UNKNOWN = -1;
+
+    private final int version;
+    private final long recordsAmount;
+    private final long tombstonesAmount;
+    private final long minTimeStamp;
+    private final long maxTimeStamp;
+    @Nullable
+    private final ByteBuffer minKey;
+    @Nullable
+    private final ByteBuffer maxKey;
+
+    private TableMetadata(final int version, final Collector collector) {
+        this.version = version;
+        this.recordsAmount = collector.recordsAmount;
+        this.tombstonesAmount = collector.tombstonesAmount;
+        this.minTimeStamp = collector.minTimeStamp;
+        this.maxTimeStamp = collector.maxTimeStamp;
+        this.minKey = collector.minKey;
+        this.maxKey = collector.maxKey;
+    }
+
+    /**
+     * Reads metadata written by {@link Collector#writeTo(TableOutput)}.
+     *
+     * @param buffer  metadata region
+     * @param version table format version
+     * @return metadata
+     * @throws IllegalArgumentException if metadata is corrupted
+     */
+    static TableMetadata read(final ByteBuffer buffer, final int version) {
+        final ByteBuffer metadata = buffer.duplicate();
+        final Collector collector = new Collector();
+        collector.recordsAmount = metadata.getLong();
+        collector.tombstonesAmount = metadata.getLong();
+        collector.minTimeStamp = metadata.getLong();
+        collector.maxTimeStamp = metadata.getLong();
+        collector.minKey = readKey(metadata);
+        collector.maxKey = readKey(metadata);
+        Preconditions.checkArgument(collector.recordsAmount >= 0 && !metadata.hasRemaining());
+        return new TableMetadata(version, collector);
+    }
+
+    @Nullable
+    private static ByteBuffer readKey(final ByteBuffer metadata) {
+        final int size = metadata.getInt();
+        if (size < 0) {
+            return null;
+        }
+        Preconditions.checkArgument(size <= metadata.remaining());
+        final ByteBuffer key = metadata.slice().limit(size).slice();
+        metadata.position(metadata.position() + size);
+        return key.asReadOnlyBuffer();
+    }
+
+    /**
+     * Creates metadata of table which doesn't store it.
+     *
+     * @param footer footer of table
+     * @return metadata with only known fields
+     */
+    static TableMetadata of(final SSTableFooter footer) {
+        final Collector collector = new Collector();
+        collector.recordsAmount = footer.getRecordsAmount();
+        collector.tombstonesAmount = UNKNOWN;
+        collector.minTimeStamp = 0;
+        collector.maxTimeStamp = footer.getMaxTimeStamp();
+        return new TableMetadata(footer.getVersion(), collector);
+    }
+
+    static TableMetadata empty() {
+        return new TableMetadata(SSTableFooter.CURRENT_VERSION, new Collector());
+    }
+
+    /**
+     * Checks whether table may have keys in [from, to) range.
+     *
+     * @param from the first key of range inclusive
+     * @param to   the last key of range exclusive, {@code null} means no bound
+     * @return {@code false} if table definitely has no keys in range
+     */
+    boolean overlaps(@NotNull final ByteBuffer from, @Nullable final ByteBuffer to) {
+        if (recordsAmount == 0) {
+            return false;
+        }
+        return (maxKey == null || Keys.compare(maxKey, from) >= 0)
+                && (to == null || minKey == null || Keys.compare(minKey, to) < 0);
+    }
+
+    /**
+     * Checks whether given key is within table key range.
+     *
+     * @param key key to look for
+     * @return {@code false} if table definitely has no such key
+     */
+    boolean mayContain(@NotNull final ByteBuffer key) {
+        return recordsAmount != 0
+                && (minKey == null || Keys.compare(minKey, key) <= 0)
+                && (maxKey == null || Keys.compare(maxKey, key) >= 0);
+    }
+
+    /**
+     * Checks whether key ranges of two tables intersect, bounds inclusive.
+     *
+     * @param other metadata of another table
+     * @return {@code false} if tables definitely have no common keys
+     */
+    boolean overlaps(@NotNull final TableMetadata other) {
+        if (recordsAmount == 0 || other.recordsAmount == 0) {
+            return false;
+        }
+        return (maxKey == null || other.minKey == null || Keys.compare(maxKey, other.minKey) >= 0)
+                && (minKey == null || other.maxKey == null || Keys.compare(minKey, other.maxKey) <= 0);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getRecordsAmount() {
+        return recordsAmount;
+    }
+
+    /**
+     * Returns amount of tombstones in table.
+     *
+     * @return amount or {@link #UNKNOWN} for tables written before it was stored
+     */
+    public long getTombstonesAmount() {
+        return tombstonesAmount;
+    }
+
+    public long getMinTimeStamp() {
+        return minTimeStamp;
+    }
+
+    public long getMaxTimeStamp() {
+        return maxTimeStamp;
+    }
+
+    /**
+     * Returns the smallest key of table.
+     *
+     * @return key or {@code null} if table is empty or range is unknown
+     */
+    @Nullable
+    public ByteBuffer getMinKey() {
+        return minKey == null ? null : minKey.duplicate();
+    }
+
+    /**
+     * Returns the greatest key of table.
+     *
+     * @return key or {@code null} if table is empty or range is unknown
+     */
+    @Nullable
+    public ByteBuffer getMaxKey() {
+        return maxKey == null ? null : maxKey.duplicate();
+    }
+
+    /**
+     * Gathers metadata of a table being written, items should be added in key order.
+     */
+    static final class Collector {
+        private long recordsAmount;
+        private long tombstonesAmount;
+        private long minTimeStamp = Long.MAX_VALUE;
+        private long maxTimeStamp;
+        private ByteBuffer minKey;
+        private ByteBuffer maxKey;
+
+        void add(final Item item) {
+            if (minKey == null) {
+                minKey = item.getKey();
+            }
+            maxKey = item.getKey();
+            recordsAmount++;
+            if (item.isRemoved()) {
+                tombstonesAmount++;
+            }
+            minTimeStamp = Math.min(minTimeStamp, item.getTimeStampAbs());
+            maxTimeStamp = Math.max(maxTimeStamp, item.getTimeStampAbs());
+        }
+
+        long getRecordsAmount() {
+            return recordsAmount;
+        }
+
+        long getMaxTimeStamp() {
+            return maxTimeStamp;
+        }
+
+        void writeTo(final TableOutput output) throws IOException {
+            output.writeLong(recordsAmount);
+            output.writeLong(tombstonesAmount);
+            output.writeLong(recordsAmount == 0 ? 0 : minTimeStamp);
+            output.writeLong(maxTimeStamp);
+            writeKey(output, minKey);
+            writeKey(output, maxKey);
+        }
+
+        private static void writeKey(final TableOutput output, @Nullable final ByteBuffer key) throws IOException {
+            if (key == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(key.remaining());
+                output.write(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered output of a new table file.
+ * Data is gathered in a direct buffer reused by all tables written by the same thread
+ * and goes to the channel in large writes, chunks larger than the buffer are written directly.
+ * Every write to the channel takes tokens from {@link IoRateLimiter}.
+ * File is synced on close, so a table renamed to its final name is durable.
+ */
+final class TableOutput extends OutputStream {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final FileChannel fileChannel;
+    private final ByteBuffer buffer;
+    private final IoRateLimiter limiter;
+    private long position;
+
+    /**
+     * Creates a new file for writing.
+     *
+     * @param path    file path
+     * @param limiter limiter of write rate
+     * @throws IOException if file can't be opened
+     */
+    TableOutput(final Path path, final IoRateLimiter limiter) throws IOException {
+        this.fileChannel = (FileChannel) Files.newByteChannel(path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.limiter = limiter;
+        this.buffer = BUFFERS.get();
+        buffer.clear();
+    }
+
+    /**
+     * Returns amount of bytes written so far.
+     *
+     * @return position in file
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * Writes remaining bytes of given buffer, its position is not changed.
+     *
+     * @param src bytes to write
+     * @throws IOException if write failed
+     */
+    void write(final ByteBuffer src) throws IOException {
+        final int size = src.remaining();
+        if (size > buffer.remaining()) {
+            flushBuffer();
+        }
+        if (size > buffer.capacity()) {
+            writeFully(src.duplicate());
+        } else {
+            buffer.put(src.duplicate());
+        }
+        position += size;
+    }
+
+    void writeInt(final int value) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+        position += Integer.BYTES;
+    }
+
+    void writeLong(final long value) throws IOException {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+        position += Long.BYTES;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureRemaining(Byte.BYTES);
+        buffer.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    private void ensureRemaining(final int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(final ByteBuffer src) throws IOException {
+        limiter.acquire(src.remaining());
+        while (src.hasRemaining()) {
+            fileChannel.write(src);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            fileChannel.force(false);
+        } finally {
+            fileChannel.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Access to records of a single SSTable file in one of supported on-disk formats.
+ */
+interface TableReader {
+    /**
+     * Get iterator over records. Starts from given key.
+     */
+    Iterator<Item> iterator(@NotNull ByteBuffer from);
+
+    /**
+     * Get cursor over records. Starts from given key.
+     */
+    TableCursor cursor(@NotNull ByteBuffer from);
+
+    /**
+     * Get record with exactly given key.
+     *
+     * @return record or {@code null} if there is no such key
+     */
+    @Nullable
+    Item get(@NotNull ByteBuffer key);
+
+    /**
+     * Get keys spread evenly over the table without reading data, used to split it into ranges.
+     *
+     * @param amount maximum amount of keys
+     * @return sorted keys, possibly not present in the table
+     */
+    List<ByteBuffer> sampleKeys(int amount);
+}
@@ -0,0 +1,154 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SSTables of storage ordered from the newest to the oldest one by {@link SSTable#getMaxTimeStamp()},
+ * so point reads may stop at the first table which has the key.
+ * Readers get immutable snapshots, so flushes and compactions never block them.
+ * The set holds a reference to every table it contains, readers pin tables with {@link #acquire()},
+ * so a replaced table is deleted only after the last reader releases it.
+ * Every change is recorded in {@link Manifest} before it becomes visible.
+ */
+final class TableSet implements Closeable {
+    private final Manifest manifest;
+    private volatile List<SSTable> tables;
+    private final Set<SSTable> retired = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates set of tables already listed in manifest.
+     *
+     * @param manifest manifest of data directory
+     * @param tables   live tables
+     */
+    TableSet(@NotNull final Manifest manifest, @NotNull final Collection<SSTable> tables) {
+        this.manifest = manifest;
+        final List<SSTable> sorted = new ArrayList<>(tables);
+        sorted.sort(Comparator.comparingLong(SSTable::getMaxTimeStamp).reversed());
+        this.tables = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Returns current tables without pinning them.
+     * Only compaction may use them, since it is the one which removes tables.
+     *
+     * @return immutable list from the newest table to the oldest one
+     */
+    @NotNull
+    List<SSTable> snapshot() {
+        return tables;
+    }
+
+    /**
+     * Pins current tables for a reader.
+     *
+     * @return snapshot which should be closed after reading
+     */
+    @NotNull
+    TableSnapshot acquire() {
+        while (true) {
+            final List<SSTable> current = tables;
+            int pinned = 0;
+            while (pinned < current.size() && current.get(pinned).retain()) {
+                pinned++;
+            }
+            if (pinned == current.size()) {
+                return new TableSnapshot(current);
+            }
+            // A table is released only after it is removed from the set, so the next attempt sees a new list
+            for (int i = 0; i < pinned; i++) {
+                current.get(i).release();
+            }
+        }
+    }
+
+    int size() {
+        return tables.size();
+    }
+
+    int level0Size() {
+        int size = 0;
+        for (final SSTable table : tables) {
+            if (table.getLevel() == 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    long residentBytes() {
+        long size = 0;
+        for (final SSTable table : tables) {
+            size += table.residentBytes();
+        }
+        return size;
+    }
+
+    void add(@NotNull final SSTable table) throws IOException {
+        replace(Collections.emptyList(), Collections.singletonList(table));
+    }
+
+    /**
+     * Atomically replaces given tables with new ones and releases references of the set to removed ones.
+     *
+     * @param removed tables to remove, all of them should be in the set
+     * @param added   tables to add
+     * @throws IOException           if change can't be recorded in manifest, the set is not changed then
+     * @throws IllegalStateException if some of removed tables are not in the set
+     */
+    synchronized void replace(@NotNull final Collection<SSTable> removed,
+                              @NotNull final Collection<SSTable> added) throws IOException {
+        final List<SSTable> current = tables;
+        final List<SSTable> result = new ArrayList<>(current.size() + 1);
+        for (final SSTable table : current) {
+            if (!removed.contains(table)) {
+                result.add(table);
+            }
+        }
+        Preconditions.checkState(current.size() - result.size() == removed.size(), "Unknown table removed");
+        for (final SSTable table : added) {
+            int index = 0;
+            while (index < result.size() && result.get(index).getMaxTimeStamp() > table.getMaxTimeStamp()) {
+                index++;
+            }
+            result.add(index, table);
+        }
+        manifest.record(removed, added, result);
+        tables = Collections.unmodifiableList(result);
+        for (final SSTable table : removed) {
+            table.release();
+            if (!table.isReleased()) {
+                retired.add(table);
+            }
+        }
+        retired.removeIf(SSTable::isReleased);
+    }
+
+    /**
+     * Releases all tables, obsolete tables which are still pinned by readers are deleted anyway,
+     * so that their data is not loaded again.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        manifest.close();
+        for (final SSTable table : tables) {
+            table.release();
+        }
+        tables = Collections.emptyList();
+        for (final SSTable table : retired) {
+            table.deleteIfObsolete();
+        }
+        retired.clear();
+    }
+}
@@ -0,0 +1,65 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.collect.AbstractIterator;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.lang.ref.Cleaner;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tables pinned by a reader, see {@link TableSet#acquire()}.
+ * Files of pinned tables are not deleted by compaction until the snapshot is closed.
+ */
+final class TableSnapshot implements Closeable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final List<SSTable> tables;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TableSnapshot(@NotNull final List<SSTable> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Returns pinned tables.
+     *
+     * @return immutable list from the newest table to the oldest one
+     */
+    List<SSTable> getTables() {
+        return tables;
+    }
+
+    /**
+     * Binds the snapshot to an iterator over its tables.
+     * The snapshot is closed when the iterator is exhausted or, if a reader abandons it, collected by GC.
+     *
+     * @param items iterator over tables of this snapshot
+     * @return iterator over the same items
+     */
+    Iterator<Item> pin(@NotNull final Iterator<Item> items) {
+        final Iterator<Item> pinned = new AbstractIterator<>() {
+            @Override
+            protected Item computeNext() {
+                if (items.hasNext()) {
+                    return items.next();
+                }
+                close();
+                return endOfData();
+            }
+        };
+        CLEANER.register(pinned, this::close);
+        return pinned;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            for (final SSTable table : tables) {
+                table.release();
+            }
+        }
+    }
+}
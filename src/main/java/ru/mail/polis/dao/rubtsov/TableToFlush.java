@@ -1,20 +1,28 @@
 package ru.mail.polis.dao.rubtsov;
 
 class TableToFlush {
-    private final Table table;
+    private final MemTableEpoch epoch;
     private final boolean poisonPill;
 
-    TableToFlush(final Table table) {
-        this(table, false);
+    TableToFlush(final MemTableEpoch epoch) {
+        this(epoch, false);
     }
 
-    TableToFlush(final Table table, final boolean poisonPill) {
-        this.table = table;
+    TableToFlush(final MemTableEpoch epoch, final boolean poisonPill) {
+        this.epoch = epoch;
         this.poisonPill = poisonPill;
     }
 
-    Table getTable() {
-        return table;
+    MemTable getTable() {
+        return epoch.getTable();
+    }
+
+    long getGeneration() {
+        return epoch.getGeneration();
+    }
+
+    void awaitWriters() {
+        epoch.awaitWriters();
     }
 
     boolean isPoisonPill() {
@@ -0,0 +1,47 @@
+package ru.mail.polis.dao.rubtsov;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of non-negative ints, 7 bits per byte, least significant group first.
+ */
+final class VarInts {
+    private static final int MAX_SIZE = 5;
+
+    private VarInts() {
+    }
+
+    static void put(final ByteBuffer buffer, final int value) {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            buffer.put((byte) ((rest & 0x7F) | 0x80));
+            rest >>>= 7;
+        }
+        buffer.put((byte) rest);
+    }
+
+    static int get(final ByteBuffer buffer) {
+        int result = 0;
+        for (int i = 0; i < MAX_SIZE; i++) {
+            final byte group = buffer.get();
+            result |= (group & 0x7F) << (7 * i);
+            if (group >= 0) {
+                Preconditions.checkArgument(result >= 0, "Corrupted varint");
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Corrupted varint");
+    }
+
+    static int size(final int value) {
+        int size = 1;
+        int rest = value >>> 7;
+        while (rest != 0) {
+            size++;
+            rest >>>= 7;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,234 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Segment of write-ahead log of one {@link MemTable}, it is deleted once the table is flushed.
+ * Record is [payload size][CRC32 of payload][timestamp][key size][key][value], tombstones have no value.
+ * Appended records are written by group commit: the first writer waiting for its record writes
+ * all records appended so far with one write and sync, writers arriving meanwhile are covered by the next one.
+ * Records of a failed write or sync are kept and written again by the next commit from where the last
+ * successful write ended, so a commit never returns before its record is written.
+ * Without sync on commit the records are left to OS until {@link #sync()}.
+ * A broken record ends replay, it is a write interrupted by crash.
+ */
+final class WriteAheadLog implements Closeable {
+    static final String EXTENSION = ".wal";
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean force;
+    private final Lock commitLock = new ReentrantLock();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    // Records taken from pending but not written yet, guarded by commit lock
+    private final List<ByteBuffer> unwritten = new ArrayList<>();
+    private long appended;
+    private long written;
+    private volatile long committed;
+    private long synced;
+    private boolean closed;
+
+    /**
+     * Creates a segment written to given channel.
+     *
+     * @param path    file of the segment
+     * @param channel channel of an empty file
+     * @param force   whether every commit syncs records to storage device
+     */
+    WriteAheadLog(@NotNull final Path path, @NotNull final FileChannel channel, final boolean force) {
+        this.path = path;
+        this.force = force;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty segment.
+     *
+     * @param dir   data directory
+     * @param name  name of the segment, unique ID of its table
+     * @param force whether every commit syncs records to storage device
+     * @return log segment
+     * @throws IOException if segment can't be created
+     */
+    static WriteAheadLog create(@NotNull final Path dir,
+                                @NotNull final String name,
+                                final boolean force) throws IOException {
+        final Path path = dir.resolve(name + EXTENSION);
+        return new WriteAheadLog(path,
+                FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW), force);
+    }
+
+    static boolean isSegment(@NotNull final Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Reads items of a segment left by previous run.
+     *
+     * @param file segment
+     * @return items in order of writing
+     * @throws IOException if segment can't be read
+     */
+    static List<Item> replay(@NotNull final Path file) throws IOException {
+        final ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+        final List<Item> items = new ArrayList<>();
+        while (log.remaining() >= HEADER_SIZE) {
+            final int size = log.getInt();
+            final int checksum = log.getInt();
+            if (size < Long.BYTES + Integer.BYTES || size > log.remaining()) {
+                break;
+            }
+            final ByteBuffer record = log.slice().limit(size);
+            log.position(log.position() + size);
+            if (checksum(record) != checksum) {
+                break;
+            }
+            items.add(decode(record));
+        }
+        return items;
+    }
+
+    private static Item decode(final ByteBuffer record) {
+        final long timeStamp = record.getLong();
+        final int keySize = record.getInt();
+        final ByteBuffer key = record.slice().limit(keySize);
+        record.position(record.position() + keySize);
+        return Item.of(key, timeStamp < 0 ? Item.TOMBSTONE : record.slice(), timeStamp);
+    }
+
+    private static ByteBuffer encode(final Item item) {
+        final ByteBuffer key = item.getKey();
+        final ByteBuffer value = item.getValue();
+        final int size = Long.BYTES + Integer.BYTES + key.remaining() + value.remaining();
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + size);
+        record.position(HEADER_SIZE);
+        record.putLong(item.getTimeStamp())
+                .putInt(key.remaining())
+                .put(key.duplicate())
+                .put(value.duplicate());
+        record.flip();
+        final int checksum = checksum(record.duplicate().position(HEADER_SIZE));
+        return record.putInt(0, size).putInt(Integer.BYTES, checksum);
+    }
+
+    private static int checksum(final ByteBuffer payload) {
+        final CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Buffers a record of the item, it is written by a following commit.
+     *
+     * @param item item to log
+     * @return sequence number of the record to commit
+     */
+    long append(@NotNull final Item item) {
+        final ByteBuffer record = encode(item);
+        synchronized (this) {
+            pending.add(record);
+            return ++appended;
+        }
+    }
+
+    /**
+     * Writes records appended up to given one unless they are written by a concurrent commit.
+     *
+     * @param sequence sequence number of the record
+     * @throws IOException if records can't be written
+     */
+    void commit(final long sequence) throws IOException {
+        if (committed >= sequence) {
+            return;
+        }
+        commitLock.lock();
+        try {
+            if (!closed && committed < sequence) {
+                writePending(force);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all appended records and syncs them to storage device.
+     *
+     * @throws IOException if records can't be written
+     */
+    void sync() throws IOException {
+        commitLock.lock();
+        try {
+            if (!closed) {
+                writePending(true);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void writePending(final boolean sync) throws IOException {
+        final long last;
+        synchronized (this) {
+            unwritten.addAll(pending);
+            pending = new ArrayList<>();
+            last = appended;
+        }
+        final ByteBuffer[] batch = unwritten.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (final ByteBuffer record : batch) {
+            remaining += record.remaining();
+        }
+        if (remaining > 0) {
+            // A failed write may have left a part of the batch after the written records
+            channel.position(written);
+            while (remaining > 0) {
+                final long bytes = channel.write(batch);
+                written += bytes;
+                remaining -= bytes;
+            }
+            unwritten.clear();
+        }
+        if (sync && synced < last) {
+            channel.force(false);
+            synced = last;
+        }
+        // Published after sync, so waiting writers don't return before their records are durable
+        committed = last;
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            closed = true;
+            channel.close();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Closes and removes the segment, its table should be flushed before.
+     *
+     * @throws IOException if segment can't be removed
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.mail.polis.dao.rubtsov;
+
+import java.io.IOException;
+
+/**
+ * Write rejected because flushes or compactions are too far behind, it may be retried later.
+ */
+public class WriteRejectedException extends IOException {
+    private static final long serialVersionUID = 2834916157237468012L;
+
+    private final int retryAfterSeconds;
+
+    public WriteRejectedException(final String s, final int retryAfterSeconds) {
+        super(s);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission of writes by debt of background work: bytes of memtables waiting for flush
+ * and amount of level 0 tables, every one of which is probed by reads.
+ * Past a soft limit every write is delayed, the longer the closer debt is to the hard limit and the larger
+ * the write is, so at the hard limit writes proceed no faster than {@link #DELAYED_WRITE_RATE} bytes per second
+ * and large writes don't outrun background work in the few delays they get.
+ * Past the hard limit a write waits a bounded time for debt to drop and is rejected if it doesn't,
+ * so callers see {@link WriteRejectedException} instead of queueing behind the flusher.
+ */
+final class WriteStallController {
+    private static final long MAX_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long DELAYED_WRITE_RATE = 16 * 1024 * 1024;
+    private static final long MAX_STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final Limit pendingBytes;
+    private final Limit level0Tables;
+    private final StorageStats stats;
+
+    /**
+     * Creates controller.
+     *
+     * @param pendingBytes bytes of memtables waiting for flush
+     * @param level0Tables amount of level 0 tables
+     * @param stats        counters of stalls
+     */
+    WriteStallController(@NotNull final Limit pendingBytes,
+                         @NotNull final Limit level0Tables,
+                         @NotNull final StorageStats stats) {
+        this.pendingBytes = pendingBytes;
+        this.level0Tables = level0Tables;
+        this.stats = stats;
+    }
+
+    /**
+     * Delays or rejects a write according to current debt.
+     *
+     * @param bytes size of keys and values written
+     * @throws WriteRejectedException if debt stays over the hard limit
+     */
+    void admit(final long bytes) throws WriteRejectedException {
+        final double pressure = pressure();
+        if (pressure <= 0) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            if (pressure < 1) {
+                final double delay = MAX_DELAY_NANOS
+                        + (double) bytes * TimeUnit.SECONDS.toNanos(1) / DELAYED_WRITE_RATE;
+                LockSupport.parkNanos((long) (delay * pressure));
+                return;
+            }
+            while (pressure() >= 1) {
+                if (System.nanoTime() - start >= MAX_STALL_NANOS) {
+                    stats.rejected();
+                    throw new WriteRejectedException("Background work is behind", RETRY_AFTER_SECONDS);
+                }
+                LockSupport.parkNanos(POLL_NANOS);
+            }
+        } finally {
+            stats.stalled(System.nanoTime() - start);
+        }
+    }
+
+    private double pressure() {
+        return Math.max(pendingBytes.pressure(), level0Tables.pressure());
+    }
+
+    /**
+     * Soft and hard limits of a kind of debt, limits are counted in units which may change at runtime.
+     */
+    static final class Limit {
+        private final LongSupplier debt;
+        private final LongSupplier unit;
+        private final long soft;
+        private final long hard;
+
+        Limit(@NotNull final LongSupplier debt, final long soft, final long hard) {
+            this(debt, () -> 1, soft, hard);
+        }
+
+        /**
+         * Creates limits of debt measured in given units.
+         *
+         * @param debt current debt
+         * @param unit size of a unit of limits, e.g. flush threshold for bytes of memtables
+         * @param soft limit which starts delays
+         * @param hard limit which starts rejections
+         */
+        Limit(@NotNull final LongSupplier debt, @NotNull final LongSupplier unit, final long soft, final long hard) {
+            this.debt = debt;
+            this.unit = unit;
+            this.soft = soft;
+            this.hard = hard;
+        }
+
+        /**
+         * Returns 0 under the soft limit, growing to 1 at the hard limit.
+         */
+        double pressure() {
+            final long value = debt.getAsLong();
+            final long size = unit.getAsLong();
+            return value <= soft * size ? 0 : (double) (value - soft * size) / ((hard - soft) * size);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ru.mail.polis.service.rubtsov;
+
+/**
+ * Outcome of the write of a coordinator to its own storage.
+ */
+enum LocalWrite {
+    /**
+     * The write is applied and counts as an ack.
+     */
+    APPLIED,
+    /**
+     * Storage shed the write, it counts as a missing ack of an overloaded replica.
+     */
+    SHED,
+    /**
+     * The coordinator is not a replica of the key or its write failed.
+     */
+    NONE
+}
@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import ru.mail.polis.Record;
 import ru.mail.polis.dao.DAO;
 import ru.mail.polis.dao.rubtsov.Item;
+import ru.mail.polis.dao.rubtsov.WriteRejectedException;
 import ru.mail.polis.service.Service;
 
 import java.io.IOException;
@@ -34,6 +35,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Charsets.UTF_8;
@@ -216,9 +218,9 @@ public class MyService extends HttpServer implements Service {
                      final boolean proxy,
                      final HttpSession session) throws IOException {
         final ByteBuffer key = ByteBuffer.wrap(id.getBytes(UTF_8));
-        final Iterator<Item> itemIterator = dao.latestIterator(key);
+        final Item item = dao.getLatest(key);
         if (proxy) {
-            session.sendResponse(ServiceUtils.from(ValueUtils.from(key, itemIterator), true));
+            session.sendResponse(ServiceUtils.from(ValueUtils.from(item), true));
             return;
         }
 
@@ -234,7 +236,7 @@ public class MyService extends HttpServer implements Service {
 
         CompletableFuture.supplyAsync(() -> {
             if (nodes.contains(topology.me())) {
-                return values.add(ValueUtils.from(key, itemIterator));
+                return values.add(ValueUtils.from(item));
             } else {
                 return false;
             }
@@ -267,8 +269,7 @@ public class MyService extends HttpServer implements Service {
         final ByteBuffer key = ByteBuffer.wrap(id.getBytes(UTF_8));
         final ByteBuffer value = ByteBuffer.wrap(valueArray);
         if (proxy) {
-            dao.upsert(key, value);
-            session.sendResponse(new Response(Response.CREATED, Response.EMPTY));
+            writeProxied(() -> dao.upsert(key, value), Response.CREATED, session);
             return;
         }
 
@@ -279,30 +280,8 @@ public class MyService extends HttpServer implements Service {
 
         final List<CompletableFuture<HttpResponse<byte[]>>> futures = sendRequestsAndCollect(requests);
 
-        final int ackNeeded = nodes.contains(topology.me()) ? rf.getAck() - 1 : rf.getAck();
-
-        CompletableFuture.supplyAsync(() -> {
-            if (nodes.contains(topology.me())) {
-                try {
-                    dao.upsert(key, value);
-                } catch (IOException e) {
-                    sendInternalError(session);
-                    logger.error("Can't upsert to DAO {} : {}", key, value, e);
-                }
-            }
-            return true;
-        }, myWorkers)
-                .thenComposeAsync(skip -> FutureUtils.getFutureResponses(futures, ackNeeded))
-                .whenCompleteAsync((responses, fail) -> handlePutOrDeleteResponses(
-                        nodes.contains(topology.me()),
-                        rf.getAck(),
-                        responses,
-                        session,
-                        201
-                )).exceptionally(e -> {
-            logger.error(FUTURE_ERROR_MSG, e);
-            return null;
-        });
+        final boolean replica = nodes.contains(topology.me());
+        writeToReplicas(() -> writeLocally(replica, () -> dao.upsert(key, value), key), futures, rf, session, 201);
     }
 
     private void remove(final String id,
@@ -311,8 +290,7 @@ public class MyService extends HttpServer implements Service {
                         final HttpSession session) throws IOException {
         final ByteBuffer key = ByteBuffer.wrap(id.getBytes(UTF_8));
         if (proxy) {
-            dao.remove(key);
-            session.sendResponse(new Response(Response.ACCEPTED, Response.EMPTY));
+            writeProxied(() -> dao.remove(key), Response.ACCEPTED, session);
             return;
         }
 
@@ -322,32 +300,65 @@ public class MyService extends HttpServer implements Service {
 
         final List<CompletableFuture<HttpResponse<byte[]>>> futures = sendRequestsAndCollect(requests);
 
-        final int ackNeeded = nodes.contains(topology.me()) ? rf.getAck() - 1 : rf.getAck();
+        final boolean replica = nodes.contains(topology.me());
+        writeToReplicas(() -> writeLocally(replica, () -> dao.remove(key), key), futures, rf, session, 202);
+    }
 
-        CompletableFuture.supplyAsync(() -> {
-            if (nodes.contains(topology.me())) {
-                try {
-                    dao.remove(key);
-                } catch (IOException e) {
-                    sendInternalError(session);
-                    logger.error("Can't remove from DAO {}", key, e);
-                }
-            }
-            return true;
-        }, myWorkers)
-                .thenComposeAsync(skip -> FutureUtils.getFutureResponses(futures, ackNeeded))
-                .whenCompleteAsync((responses, fail) -> handlePutOrDeleteResponses(
-                        nodes.contains(topology.me()),
-                        rf.getAck(),
-                        responses,
-                        session,
-                        202
-                )).exceptionally(e -> {
+    /**
+     * Completes a coordinated write once replicas answer, the local write counts as one of acks if it is applied.
+     */
+    private void writeToReplicas(final Supplier<LocalWrite> localWrite,
+                                 final List<CompletableFuture<HttpResponse<byte[]>>> futures,
+                                 final ReplicationFactor rf,
+                                 final HttpSession session,
+                                 final int neededStatusCode) {
+        CompletableFuture.supplyAsync(localWrite, myWorkers)
+                .thenComposeAsync(local -> {
+                    final int ackNeeded = local == LocalWrite.APPLIED ? rf.getAck() - 1 : rf.getAck();
+                    return FutureUtils.getFutureResponses(futures, Math.min(ackNeeded, futures.size()))
+                            .thenAcceptAsync(responses -> handlePutOrDeleteResponses(local, rf.getAck(), responses,
+                                    session, neededStatusCode));
+                })
+                .whenCompleteAsync((skip, fail) -> {
+                    if (fail != null) {
+                        ServiceUtils.handleFailure(fail, session);
+                    }
+                }).exceptionally(e -> {
             logger.error(FUTURE_ERROR_MSG, e);
             return null;
         });
     }
 
+    /**
+     * Writes to this node if it is one of replicas, a write shed by storage is left to other replicas.
+     */
+    private LocalWrite writeLocally(final boolean replica, final Action write, final ByteBuffer key) {
+        if (!replica) {
+            return LocalWrite.NONE;
+        }
+        try {
+            write.act();
+            return LocalWrite.APPLIED;
+        } catch (WriteRejectedException e) {
+            return LocalWrite.SHED;
+        } catch (IOException e) {
+            logger.error("Can't write to DAO {}", key, e);
+            return LocalWrite.NONE;
+        }
+    }
+
+    private static void writeProxied(final Action write,
+                                     final String status,
+                                     final HttpSession session) throws IOException {
+        try {
+            write.act();
+        } catch (WriteRejectedException e) {
+            session.sendResponse(ServiceUtils.unavailable(e));
+            return;
+        }
+        session.sendResponse(new Response(status, Response.EMPTY));
+    }
+
     private void sendInternalError(final HttpSession session) {
         try {
             session.sendError(Response.INTERNAL_ERROR, "Something went wrong...");
@@ -5,16 +5,21 @@ import one.nio.http.Response;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.mail.polis.dao.rubtsov.WriteRejectedException;
 
 import java.io.IOException;
 import java.net.http.HttpResponse;
 import java.util.List;
+import java.util.concurrent.CompletionException;
 
 import static ru.mail.polis.service.rubtsov.MyService.TIMESTAMP_HEADER;
 
 final class ServiceUtils {
     private static final Logger logger = LoggerFactory.getLogger(ServiceUtils.class);
     private static final String RESPONSE_ERROR_MSG = "Can't send a response";
+    private static final String RETRY_AFTER_HEADER = "Retry-After: ";
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
 
     private ServiceUtils() {
     }
@@ -42,6 +47,40 @@ final class ServiceUtils {
         }
     }
 
+    /**
+     * Builds response to a write shed by storage, it tells client when to retry.
+     *
+     * @param e rejection by storage
+     * @return 503 response
+     */
+    static Response unavailable(@NotNull final WriteRejectedException e) {
+        return unavailable(e.getRetryAfterSeconds());
+    }
+
+    private static Response unavailable(final int retryAfterSeconds) {
+        final Response response = new Response(Response.SERVICE_UNAVAILABLE, Response.EMPTY);
+        response.addHeader(RETRY_AFTER_HEADER + retryAfterSeconds);
+        return response;
+    }
+
+    /**
+     * Responds to a coordinated write which failed unexpectedly.
+     *
+     * @param fail    failure of the write
+     * @param session HTTP session
+     */
+    static void handleFailure(@NotNull final Throwable fail, @NotNull final HttpSession session) {
+        final Throwable cause = fail instanceof CompletionException && fail.getCause() != null
+                ? fail.getCause()
+                : fail;
+        logger.error("Write failed", cause);
+        try {
+            session.sendResponse(new Response(Response.INTERNAL_ERROR, Response.EMPTY));
+        } catch (IOException e) {
+            logger.error(RESPONSE_ERROR_MSG, e);
+        }
+    }
+
     static void handleGetResponses(final boolean haveOneAlready,
                                    final int ack,
                                    @NotNull final List<Value> values,
@@ -68,16 +107,28 @@ final class ServiceUtils {
         }
     }
 
-    static void handlePutOrDeleteResponses(final boolean haveOneAlready,
+    /**
+     * Responds to a coordinated write, 503 is sent only if the quorum is missed and some replica shed the write.
+     *
+     * @param local            outcome of the write to this node
+     * @param ack              acks needed
+     * @param httpResponses    responses of other replicas
+     * @param session          HTTP session
+     * @param neededStatusCode status of a replica which applied the write
+     */
+    static void handlePutOrDeleteResponses(@NotNull final LocalWrite local,
                                            final int ack,
                                            @NotNull final List<HttpResponse<byte[]>> httpResponses,
                                            @NotNull final HttpSession session,
                                            final int neededStatusCode) {
-        int resAck = haveOneAlready ? 1 : 0;
+        int resAck = local == LocalWrite.APPLIED ? 1 : 0;
+        boolean shed = local == LocalWrite.SHED;
         for (final HttpResponse<byte[]> r :
                 httpResponses) {
             if (r.statusCode() == neededStatusCode) {
                 resAck++;
+            } else if (r.statusCode() == SERVICE_UNAVAILABLE) {
+                shed = true;
             }
         }
         try {
@@ -87,6 +138,9 @@ final class ServiceUtils {
                 } else if (neededStatusCode == 202) {
                     session.sendResponse(new Response(Response.ACCEPTED, Response.EMPTY));
                 }
+            } else if (shed) {
+                // Replicas are overloaded rather than unreachable
+                session.sendResponse(unavailable(DEFAULT_RETRY_AFTER_SECONDS));
             } else {
                 session.sendResponse(new Response(Response.GATEWAY_TIMEOUT, Response.EMPTY));
             }
@@ -1,6 +1,7 @@
 package ru.mail.polis.service.rubtsov;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import ru.mail.polis.dao.rubtsov.Item;
 
 import java.io.IOException;
@@ -8,7 +9,6 @@ import java.net.http.HttpResponse;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.Optional;
 
 import static ru.mail.polis.service.rubtsov.MyService.TIMESTAMP_HEADER;
@@ -43,15 +43,8 @@ final class ValueUtils {
         }
     }
 
-    static Value from(@NotNull final ByteBuffer key,
-                      @NotNull final Iterator<Item> items) {
-        if (!items.hasNext()) {
-            return Value.absent();
-        }
-
-        final Item item = items.next();
-
-        if (!item.getKey().equals(key)) {
+    static Value from(@Nullable final Item item) {
+        if (item == null) {
             return Value.absent();
         }
 
@@ -0,0 +1,63 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of SSTables merged in background.
+ */
+class BackgroundCompactionTest extends TestBase {
+    private static final int VALUE_SIZE = 1024 * 1024;
+    private static final int FLUSHES = 24;
+    private static final int MAX_TABLES = 12;
+
+    @Test
+    void tablesAmountIsBounded(@TempDir File data) throws IOException, InterruptedException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int round = 0; round < FLUSHES; round++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+
+                // Overwrite the same keys so merged tables stay small
+                for (int i = 0; i < 5; i++) {
+                    dao.upsert(ByteBuffer.wrap(new byte[]{(byte) i}), randomBuffer(VALUE_SIZE));
+                }
+            }
+
+            // Compaction runs in background, so wait for it a bit
+            final long deadline = System.currentTimeMillis() + 30_000;
+            while (tables(data) > MAX_TABLES && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertTrue(tables(data) <= MAX_TABLES);
+
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static int tables(final File data) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".dat"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,204 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of SSTables written as data blocks with a sparse index, and of tables written in older formats.
+ */
+class BlockFormatTest extends TestBase {
+    private static final int KEYS = 3_000;
+    private static final int BLOCK_SIZE = 256;
+    private static final int SCANS = 200;
+    private static final int SCAN_LENGTH = 20;
+    private static final long MAGIC = 0x4C534D5353544142L;
+    private static final int BLOOM_FOOTER_VERSION = 2;
+
+    @Test
+    void roundTripAcrossBlocks(@TempDir File data) throws IOException {
+        // Records are smaller and larger than a block, so they start and end anywhere inside blocks
+        final DAOConfig config = DAOConfig.builder().blockSize(BLOCK_SIZE).build();
+        final Random random = new Random(42);
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = bytes(random, 1 + random.nextInt(32));
+                final ByteBuffer value = bytes(random, random.nextInt(3 * BLOCK_SIZE));
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            check(dao, expected, random);
+        }
+    }
+
+    @Test
+    void legacyTableIsRead(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final List<ByteBuffer> removed = new ArrayList<>();
+        final ByteBuffer records = records(expected, removed);
+        final long[] offsets = offsets(records);
+        // Offsets array ends with amount of records instead of a footer
+        final ByteBuffer table = ByteBuffer.allocate(records.remaining() + Long.BYTES * (offsets.length + 1));
+        table.put(records.duplicate());
+        for (final long offset : offsets) {
+            table.putLong(offset);
+        }
+        table.putLong(offsets.length);
+        Files.write(new File(data, "legacy.dat").toPath(), table.array());
+
+        readOldTable(data, expected, removed);
+    }
+
+    @Test
+    void tableWithoutBlocksIsRead(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final List<ByteBuffer> removed = new ArrayList<>();
+        final ByteBuffer records = records(expected, removed);
+        final long[] offsets = offsets(records);
+        // Footer of the last version before blocks, the filter has all bits set so it passes every key
+        final long[] bloom = new long[4];
+        Arrays.fill(bloom, -1L);
+        final int footerSize = Long.BYTES * 4 + Integer.BYTES * 2;
+        final ByteBuffer table = ByteBuffer.allocate(records.remaining()
+                + Long.BYTES * (offsets.length + bloom.length) + footerSize);
+        table.put(records.duplicate());
+        for (final long offset : offsets) {
+            table.putLong(offset);
+        }
+        final long bloomPosition = table.position();
+        for (final long word : bloom) {
+            table.putLong(word);
+        }
+        table.putLong(System.currentTimeMillis() * 1_000_000)
+                .putLong(offsets.length)
+                .putLong(bloomPosition)
+                .putInt(1)
+                .putInt(BLOOM_FOOTER_VERSION)
+                .putLong(MAGIC);
+        Files.write(new File(data, "bloom.dat").toPath(), table.array());
+
+        readOldTable(data, expected, removed);
+    }
+
+    private static void readOldTable(final File data,
+                                     final NavigableMap<ByteBuffer, ByteBuffer> expected,
+                                     final List<ByteBuffer> removed) throws IOException {
+        final Random random = new Random(42);
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected, random);
+            for (final ByteBuffer key : removed) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+            // Merged into a table of the current format
+            dao.compact();
+            check(dao, expected, random);
+        }
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected, random);
+        }
+    }
+
+    /**
+     * Writes records in format of tables without blocks, every tenth key is removed.
+     */
+    private static ByteBuffer records(final NavigableMap<ByteBuffer, ByteBuffer> expected,
+                                      final List<ByteBuffer> removed) {
+        final Random random = new Random(7);
+        final NavigableMap<ByteBuffer, ByteBuffer> values = new TreeMap<>();
+        while (values.size() < KEYS) {
+            values.put(bytes(random, 1 + random.nextInt(32)), bytes(random, 1 + random.nextInt(100)));
+        }
+        final long timeStamp = System.currentTimeMillis() * 1_000_000;
+        final ByteBuffer records = ByteBuffer.allocate(KEYS * (Integer.BYTES + 32 + Long.BYTES * 2 + 100));
+        int i = 0;
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : values.entrySet()) {
+            final ByteBuffer key = entry.getKey();
+            records.putInt(key.remaining()).put(key.duplicate());
+            if (i++ % 10 == 0) {
+                records.putLong(-timeStamp - i);
+                removed.add(key);
+            } else {
+                final ByteBuffer value = entry.getValue();
+                records.putLong(timeStamp + i).putLong(value.remaining()).put(value.duplicate());
+                expected.put(key, value);
+            }
+        }
+        return records.flip();
+    }
+
+    private static long[] offsets(final ByteBuffer records) {
+        final long[] offsets = new long[KEYS];
+        final ByteBuffer buffer = records.duplicate();
+        for (int i = 0; i < KEYS; i++) {
+            offsets[i] = buffer.position();
+            buffer.position(buffer.position() + Integer.BYTES + buffer.getInt(buffer.position()));
+            final long timeStamp = buffer.getLong();
+            if (timeStamp >= 0) {
+                buffer.position((int) (buffer.position() + Long.BYTES + buffer.getLong(buffer.position())));
+            }
+        }
+        return offsets;
+    }
+
+    private static ByteBuffer bytes(final Random random, final int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static void check(final DAO dao,
+                              final NavigableMap<ByteBuffer, ByteBuffer> expected,
+                              final Random random) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+
+        // Scans start at stored keys and between them, wherever they are in blocks
+        final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < SCANS; i++) {
+            final ByteBuffer key = keys.get(random.nextInt(keys.size()));
+            final ByteBuffer from = random.nextBoolean() ? key : join(key, ByteBuffer.allocate(1));
+            final Iterator<Record> range = dao.iterator(from);
+            final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.tailMap(from, true)
+                    .entrySet().iterator();
+            for (int j = 0; j < SCAN_LENGTH && entries.hasNext(); j++) {
+                final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+                final Record record = range.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertEquals(entries.hasNext(), range.hasNext());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of point reads which check Bloom filters of SSTables before probing them.
+ */
+class BloomFilterTest extends TestBase {
+    private static final int KEYS = 5_000;
+    private static final int TABLES = 3;
+
+    @Test
+    void absentKeysSkipTables(@TempDir File data) throws IOException {
+        write(data);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+            assertEquals(KEYS, dao.getStats().getPointReads());
+            // Keys fall into key ranges of all tables, only false positives of filters are probed
+            assertTrue(dao.getStats().readAmplification() < 0.1);
+        }
+    }
+
+    @Test
+    void presentKeysAreFound(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = write(data);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            // Every key is in a single table and filters have no false negatives
+            assertTrue(dao.getStats().readAmplification() >= 1);
+        }
+
+        // Filters are read back from merged table as well
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            dao.compact();
+        }
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static Map<ByteBuffer, ByteBuffer> write(final File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int table = 0; table < TABLES; table++) {
+            try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+                for (int i = 0; i < KEYS / TABLES; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomBuffer(64);
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,106 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.Compression;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of storage with compressed SSTable blocks.
+ */
+class CompressionTest extends TestBase {
+    private static final int KEYS = 10_000;
+    private static final int VALUE_SIZE = 256;
+
+    @Test
+    void deflate(@TempDir File data) throws IOException {
+        readBack(data, Compression.DEFLATE);
+    }
+
+    @Test
+    void lz4(@TempDir File data) throws IOException {
+        readBack(data, Compression.LZ4);
+    }
+
+    @Test
+    void incompressible(@TempDir File data) throws IOException {
+        final DAOConfig config = DAOConfig.builder().compression(Compression.LZ4).build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    private static void readBack(final File data, final Compression compression) throws IOException {
+        final DAOConfig config = DAOConfig.builder().compression(compression).build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = compressibleValue(i);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        // Values are compressible so the table has to be much smaller than them
+        assertTrue(directorySize(data) < (long) KEYS * VALUE_SIZE / 2);
+
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                final Record record = records.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertFalse(records.hasNext());
+            assertTrue(dao.getBlockCache().hitCount() > 0);
+            assertTrue(dao.getBlockCache().missCount() > 0);
+        }
+    }
+
+    private static ByteBuffer compressibleValue(final int seed) {
+        final byte[] value = new byte[VALUE_SIZE];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) ('a' + (seed + i / 16) % 8);
+        }
+        return ByteBuffer.wrap(value);
+    }
+
+    private static long directorySize(final File dir) {
+        long size = 0;
+        for (final File file : dir.listFiles()) {
+            size += file.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of throttled background I/O.
+ */
+class IoRateLimitTest extends TestBase {
+    private static final int VALUE_SIZE = 1024 * 1024;
+    private static final int VALUES_PER_TABLE = 2;
+
+    @Test
+    void compactionIsThrottled(@TempDir File data) throws IOException {
+        // Even with idle burst the rate is a few MB/s, so merging a few MB takes over a second
+        final DAOConfig config = DAOConfig.builder().backgroundIoRate(1).build();
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int table = 0; table < 2; table++) {
+            try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+                for (int i = 0; i < VALUES_PER_TABLE; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomBuffer(VALUE_SIZE);
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            final long start = System.currentTimeMillis();
+            dao.compact();
+            assertTrue(System.currentTimeMillis() - start >= 1000);
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+}
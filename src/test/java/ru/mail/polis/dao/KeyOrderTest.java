@@ -0,0 +1,70 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Tests of key order, which should be the order of {@link ByteBuffer#compareTo(ByteBuffer)} in memory and on disk.
+ */
+class KeyOrderTest extends TestBase {
+    private static final int KEYS = 5_000;
+
+    @Test
+    void sameAsBuffers(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final Random random = new Random(42);
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            for (int i = 0; i < KEYS; i++) {
+                // Keys share long prefixes and differ by bytes with and without sign bit around word bounds
+                final byte[] key = new byte[1 + random.nextInt(24)];
+                for (int j = 0; j < key.length; j++) {
+                    key[j] = random.nextInt(4) == 0 ? (byte) random.nextInt() : (byte) (j % 2 == 0 ? 0x7F : 0x80);
+                }
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(ByteBuffer.wrap(key), value);
+                expected.put(ByteBuffer.wrap(key), value);
+            }
+            check(dao, expected);
+        }
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected);
+            dao.compact();
+            check(dao, expected);
+        }
+    }
+
+    private static void check(final DAO dao, final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final ByteBuffer key = entry.getKey();
+            assertEquals(entry.getValue(), dao.get(key));
+            // Keys from other sources, which are read by words differently
+            final ByteBuffer direct = ByteBuffer.allocateDirect(key.remaining()).put(key.duplicate()).flip();
+            assertEquals(entry.getValue(), dao.get(direct));
+            assertEquals(entry.getValue(), dao.get(key.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN)));
+        }
+    }
+}
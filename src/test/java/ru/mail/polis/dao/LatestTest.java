@@ -0,0 +1,70 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.Item;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Point read tests for {@link DAO#getLatest(ByteBuffer)}.
+ */
+class LatestTest extends TestBase {
+    private static final int VALUE_SIZE = 1024 * 1024;
+    private static final int TABLES = 12;
+
+    @Test
+    void absent(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            assertNull(dao.getLatest(randomKeyBuffer()));
+        }
+    }
+
+    @Test
+    void newestVersionAcrossTables(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        ByteBuffer value = null;
+
+        // Each round overwrites the key and pushes enough data to flush a table
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int round = 0; round < TABLES; round++) {
+                value = randomValueBuffer();
+                dao.upsert(key, value);
+                for (int i = 0; i < 5; i++) {
+                    dao.upsert(randomKeyBuffer(), randomBuffer(VALUE_SIZE));
+                }
+                assertEquals(value, dao.getLatest(key).getValue());
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.getLatest(key).getValue());
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void tombstoneShadowsOlderTables(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValueBuffer());
+            for (int i = 0; i < 10; i++) {
+                dao.upsert(randomKeyBuffer(), randomBuffer(VALUE_SIZE));
+            }
+            dao.remove(key);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            final Item item = dao.getLatest(key);
+            assertTrue(item.isRemoved());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+import ru.mail.polis.dao.rubtsov.StorageStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of storage in leveled compaction mode.
+ */
+class LeveledCompactionTest extends TestBase {
+    private static final long TABLE_SIZE = 256 * 1024;
+    private static final long HEAP_SIZE = 64 * TABLE_SIZE;
+    private static final int KEYS = 1500;
+    private static final int VALUE_SIZE = 4 * 1024;
+
+    private static final DAOConfig CONFIG = DAOConfig.builder()
+            .compactionStyle(DAOConfig.CompactionStyle.LEVELED)
+            .compactionMinThreshold(2)
+            .targetTableSize(TABLE_SIZE)
+            .build();
+
+    @Test
+    void levelsAreBuilt(@TempDir File data) throws IOException, InterruptedException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        final Set<ByteBuffer> removed = new HashSet<>();
+        try (MyDAO dao = new MyDAO(data, HEAP_SIZE, CONFIG)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomBuffer(VALUE_SIZE);
+                dao.upsert(key, value);
+                if (i % 10 == 0) {
+                    dao.remove(key);
+                    removed.add(key);
+                } else {
+                    expected.put(key, value);
+                }
+            }
+
+            // Compaction runs in background, so wait for level 0 to be merged
+            final long deadline = System.currentTimeMillis() + 30_000;
+            while (tables(data, 0) >= 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertTrue(tables(data, 0) < 2);
+            assertTrue(tables(data, 1) + tables(data, 2) > 1);
+
+            check(dao, expected, removed);
+            final StorageStats stats = dao.getStats();
+            assertTrue(stats.writeAmplification() > 1);
+            // Tables of a level don't overlap, so a read probes at most one of them
+            assertTrue(stats.readAmplification() <= levels(data));
+        }
+
+        try (DAO dao = new MyDAO(data, HEAP_SIZE, CONFIG)) {
+            check(dao, expected, removed);
+            dao.compact();
+            check(dao, expected, removed);
+            assertEquals(0, tables(data, 0));
+        }
+    }
+
+    private static void check(final DAO dao,
+                              final Map<ByteBuffer, ByteBuffer> expected,
+                              final Set<ByteBuffer> removed) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        for (final ByteBuffer key : removed) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    private static int levels(final File data) {
+        int levels = 0;
+        for (int level = 0; level < 8; level++) {
+            if (tables(data, level) > 0) {
+                levels++;
+            }
+        }
+        return levels;
+    }
+
+    private static int tables(final File data, final int level) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".dat") && level(name) == level);
+        return files == null ? 0 : files.length;
+    }
+
+    private static int level(final String name) {
+        final int separator = name.lastIndexOf("_L");
+        return separator < 0 ? 0 : Integer.parseInt(name.substring(separator + 2, name.length() - 4));
+    }
+}
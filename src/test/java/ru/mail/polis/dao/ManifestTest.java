@@ -0,0 +1,110 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of startup driven by manifest of tables.
+ */
+class ManifestTest extends TestBase {
+    private static final int KEYS = 100;
+
+    @Test
+    void leftoversAreRemoved(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data);
+        final File[] tables = tables(data);
+        assertEquals(1, tables.length);
+
+        // A table written by interrupted compaction and a table being flushed during crash
+        final File orphan = new File(data, "orphan.dat");
+        Files.copy(tables[0].toPath(), orphan.toPath());
+        final File temporary = new File(data, "flushing.tmp");
+        Files.write(temporary.toPath(), randomValue());
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertFalse(orphan.exists());
+            assertFalse(temporary.exists());
+            check(dao, expected);
+        }
+    }
+
+    @Test
+    void interruptedMoveIsCompleted(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data);
+        final File table = tables(data)[0];
+
+        // A table moved to another level is renamed after the move is recorded, and crash happened in between
+        final String name = table.getName();
+        final File renamed = new File(data, name.substring(0, name.length() - ".dat".length()) + "_L1.dat");
+        assertTrue(table.renameTo(renamed));
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertTrue(table.exists());
+            assertFalse(renamed.exists());
+            check(dao, expected);
+        }
+    }
+
+    @Test
+    void tornRecordIsIgnored(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data);
+
+        // Record of a change interrupted by crash
+        final ByteBuffer torn = ByteBuffer.allocate(Integer.BYTES * 3).putInt(1024).putInt(42).putInt(1).flip();
+        Files.write(new File(data, "MANIFEST").toPath(), torn.array(), StandardOpenOption.APPEND);
+
+        try (DAO dao = DAOFactory.create(data)) {
+            check(dao, expected);
+        }
+        assertEquals(1, tables(data).length);
+    }
+
+    @Test
+    void scannedWithoutManifest(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = fill(data);
+        assertTrue(new File(data, "MANIFEST").delete());
+
+        try (DAO dao = DAOFactory.create(data)) {
+            check(dao, expected);
+        }
+        assertTrue(new File(data, "MANIFEST").exists());
+        assertEquals(1, tables(data).length);
+    }
+
+    private static Map<ByteBuffer, ByteBuffer> fill(final File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        return expected;
+    }
+
+    private static void check(final DAO dao, final Map<ByteBuffer, ByteBuffer> expected) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+    }
+
+    private static File[] tables(final File data) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".dat"));
+        return files == null ? new File[0] : files;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of concurrent writers while memtables are switched without locks.
+ */
+class MemTableSwitchTest extends TestBase {
+    // Flush threshold is 64 KB, so writers switch memtables about a hundred times
+    private static final long HEAP = 4 * 1024 * 1024;
+    private static final int THREADS = 8;
+    private static final int KEYS_PER_THREAD = 100;
+    private static final int WRITES_PER_THREAD = 1_000;
+    private static final int VALUE_SIZE = 1024;
+
+    @Test
+    void writesSurviveSwitches(@TempDir File data) throws Exception {
+        check(data, DAOConfig.MemTableStorage.HEAP);
+    }
+
+    @Test
+    void offHeapWritesSurviveSwitches(@TempDir File data) throws Exception {
+        check(data, DAOConfig.MemTableStorage.OFF_HEAP);
+    }
+
+    private static void check(final File data, final DAOConfig.MemTableStorage storage) throws Exception {
+        // Stalls are out of scope, writers should only race with switches and flushes
+        final DAOConfig config = DAOConfig.builder()
+                .memTableStorage(storage)
+                .writeStallMemTables(1000, 2000)
+                .writeStallLevel0Tables(1000, 2000)
+                .build();
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final Map<ByteBuffer, Boolean> removed = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (MyDAO dao = new MyDAO(data, HEAP, config)) {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> writers = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++) {
+                writers.add(executor.submit(() -> {
+                    // Every writer owns its keys, so the last write of a key is known
+                    final List<ByteBuffer> keys = new ArrayList<>(KEYS_PER_THREAD);
+                    for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                        keys.add(randomKeyBuffer());
+                    }
+                    start.await();
+                    for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                        final ByteBuffer key = keys.get(ThreadLocalRandom.current().nextInt(KEYS_PER_THREAD));
+                        if (i % 10 == 0) {
+                            dao.remove(key);
+                            expected.remove(key);
+                            removed.put(key, true);
+                            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+                        } else {
+                            final ByteBuffer value = randomBuffer(VALUE_SIZE);
+                            dao.upsert(key, value);
+                            expected.put(key, value);
+                            removed.remove(key);
+                            // Visible as soon as upsert returns, wherever the memtable is
+                            assertEquals(value, dao.get(key));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (final Future<?> writer : writers) {
+                writer.get();
+            }
+            assertTrue(dao.getStats().getFlushedBytes() > 0);
+            check(dao, expected, removed);
+        } finally {
+            executor.shutdown();
+        }
+
+        try (DAO dao = new MyDAO(data, HEAP, config)) {
+            check(dao, expected, removed);
+        }
+    }
+
+    private static void check(final DAO dao,
+                              final Map<ByteBuffer, ByteBuffer> expected,
+                              final Map<ByteBuffer, Boolean> removed) throws Exception {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        for (final ByteBuffer key : removed.keySet()) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.BlockCache;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of memory split between memtables and block cache by workload.
+ */
+class MemoryBudgetTest extends TestBase {
+    private static final long BUDGET = 64 * 1024 * 1024;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int KEYS = 1000;
+
+    @Test
+    void cacheFollowsWorkload(@TempDir File data) throws IOException {
+        final DAOConfig config = DAOConfig.builder().memoryBudget(BUDGET).build();
+        final List<ByteBuffer> keys = new ArrayList<>(KEYS);
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                dao.upsert(key, randomValueBuffer());
+                keys.add(key);
+            }
+        }
+
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            final BlockCache cache = dao.getBlockCache();
+            final long initial = cache.capacityInBytes();
+            assertTrue(initial > 0 && initial < BUDGET);
+
+            // Reads from disk take memory from memtables
+            long deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (cache.capacityInBytes() <= initial && System.nanoTime() < deadline) {
+                dao.get(keys.get(ThreadLocalRandom.current().nextInt(KEYS)));
+            }
+            final long readHeavy = cache.capacityInBytes();
+            assertTrue(readHeavy > initial);
+
+            // Writes take it back
+            deadline = System.nanoTime() + TIMEOUT_NANOS;
+            while (cache.capacityInBytes() >= readHeavy && System.nanoTime() < deadline) {
+                dao.upsert(randomKeyBuffer(), randomValueBuffer());
+            }
+            assertTrue(cache.capacityInBytes() < readHeavy);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.Item;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of scans merging memory and several SSTables with overwritten and removed keys.
+ */
+class MergeTest extends TestBase {
+    private static final int KEYS = 2_000;
+    private static final int TABLES = 5;
+
+    @Test
+    void newestVersionsAcrossTables(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = write(data, TABLES);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected);
+            dao.compact();
+            check(dao, expected);
+        }
+    }
+
+    @Test
+    void manySources(@TempDir File data) throws IOException {
+        // Number of sources which is not a power of two leaves the tree unbalanced
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = write(data, 13);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected);
+        }
+    }
+
+    @Test
+    void tombstonesKeptForLatest(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = write(data, TABLES);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            final Iterator<Item> items = dao.latestIterator(ByteBuffer.allocate(0));
+            final List<ByteBuffer> keys = new ArrayList<>();
+            boolean removed = false;
+            while (items.hasNext()) {
+                final Item item = items.next();
+                keys.add(item.getKey());
+                if (item.isRemoved()) {
+                    removed = true;
+                    assertFalse(expected.containsKey(item.getKey()));
+                } else {
+                    assertEquals(expected.get(item.getKey()), item.getValue());
+                }
+            }
+            assertTrue(removed);
+            for (int i = 1; i < keys.size(); i++) {
+                assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+            }
+        }
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> write(final File data,
+                                                              final int tables) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final List<ByteBuffer> keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(randomKeyBuffer());
+        }
+        // Every table overwrites a part of keys and removes another part, the last round stays in memory
+        for (int table = 0; table < tables; table++) {
+            try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+                for (int i = table; i < KEYS; i += table + 1) {
+                    final ByteBuffer key = keys.get(i);
+                    if (i % 7 == table % 7) {
+                        dao.remove(key);
+                        expected.remove(key);
+                    } else {
+                        final ByteBuffer value = randomValueBuffer();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                }
+            }
+        }
+        return expected;
+    }
+
+    private static void check(final DAO dao, final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+
+        final ByteBuffer from = expected.firstKey();
+        final ByteBuffer to = expected.lastKey();
+        final Iterator<Record> range = dao.range(from, to);
+        for (final ByteBuffer key : expected.subMap(from, to).keySet()) {
+            assertEquals(key, range.next().getKey());
+        }
+        assertFalse(range.hasNext());
+    }
+}
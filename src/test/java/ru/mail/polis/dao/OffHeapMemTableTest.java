@@ -0,0 +1,84 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of memtables keeping keys and values off heap.
+ */
+class OffHeapMemTableTest extends TestBase {
+    private static final int KEYS = 10_000;
+    private static final DAOConfig OFF_HEAP = DAOConfig.builder()
+            .memTableStorage(DAOConfig.MemTableStorage.OFF_HEAP)
+            .build();
+
+    @Test
+    void overwritesAndRemoves(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, OFF_HEAP)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                dao.upsert(key, randomValueBuffer());
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                if (i % 10 == 0) {
+                    dao.remove(key);
+                } else {
+                    expected.put(key, value);
+                }
+            }
+            check(dao, expected);
+        }
+
+        // Flushed on close
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, OFF_HEAP)) {
+            check(dao, expected);
+        }
+    }
+
+    @Test
+    void largeValues(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, OFF_HEAP)) {
+            // Larger than a chunk of arena and than flush threshold
+            for (int i = 0; i < 8; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomBuffer(1024 * 1024 + i);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            check(dao, expected);
+        }
+    }
+
+    private static void check(final DAO dao, final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertTrue(records.hasNext());
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        assertFalse(records.hasNext());
+        assertThrows(NoSuchElementException.class, () -> dao.get(randomKeyBuffer()));
+    }
+}
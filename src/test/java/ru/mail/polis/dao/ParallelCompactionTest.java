@@ -0,0 +1,87 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of compaction split into key ranges merged in parallel.
+ */
+class ParallelCompactionTest extends TestBase {
+    private static final int KEYS = 48;
+    private static final int VALUE_SIZE = 1024 * 1024;
+    private static final int PARALLELISM = 4;
+    private static final long TABLE_SIZE = 256 * 1024 * 1024;
+
+    @Test
+    void rangesAreMerged(@TempDir File data) throws IOException {
+        // Tables are large enough to hold all data, so amount of tables depends only on ranges
+        final DAOConfig config = DAOConfig.builder()
+                .compactionStyle(DAOConfig.CompactionStyle.LEVELED)
+                .targetTableSize(TABLE_SIZE)
+                .compactionParallelism(PARALLELISM)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                dao.upsert(key, randomBuffer(VALUE_SIZE));
+                if (i % 4 == 0) {
+                    dao.remove(key);
+                } else {
+                    final ByteBuffer value = randomBuffer(VALUE_SIZE);
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+            dao.compact();
+
+            final int tables = tables(data);
+            assertTrue(tables > 1 && tables <= PARALLELISM);
+            checkAll(dao, expected);
+        }
+
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            checkAll(dao, expected);
+        }
+
+        // Size-tiered compaction keeps the result whole at level 0
+        final DAOConfig sizeTiered = DAOConfig.builder().compactionParallelism(PARALLELISM).build();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, sizeTiered)) {
+            dao.compact();
+            assertEquals(1, tables(data));
+        }
+    }
+
+    private static void checkAll(final DAO dao,
+                                 final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertTrue(records.hasNext());
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+    }
+
+    private static int tables(final File data) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".dat"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of memtables flushed by several threads.
+ */
+class ParallelFlushTest extends TestBase {
+    // Flush threshold is 256 KB, so the loop makes about a hundred flushes
+    private static final long HEAP = 16 * 1024 * 1024;
+    private static final int KEYS = 8;
+    private static final int VALUE_SIZE = 16 * 1024;
+    private static final int ROUNDS = 200;
+
+    @Test
+    void latestValueIsRead(@TempDir File data) throws IOException {
+        final DAOConfig config = DAOConfig.builder()
+                .flushThreads(4)
+                .writeStallMemTables(16, 32)
+                .writeStallLevel0Tables(1000, 2000)
+                .build();
+        final ByteBuffer[] keys = new ByteBuffer[KEYS];
+        final ByteBuffer[] values = new ByteBuffer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = randomKeyBuffer();
+        }
+        try (DAO dao = new MyDAO(data, HEAP, config)) {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < KEYS; i++) {
+                    values[i] = randomBuffer(VALUE_SIZE);
+                    dao.upsert(keys[i], values[i]);
+                }
+                // A newer table flushed before an older one would expose stale values
+                for (int i = 0; i < KEYS; i++) {
+                    assertEquals(values[i], dao.get(keys[i]));
+                }
+            }
+        }
+
+        try (DAO dao = new MyDAO(data, HEAP, config)) {
+            for (int i = 0; i < KEYS; i++) {
+                assertEquals(values[i], dao.get(keys[i]));
+            }
+        }
+    }
+}
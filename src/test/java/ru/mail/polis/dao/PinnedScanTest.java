@@ -0,0 +1,69 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of scans running concurrently with compaction.
+ */
+class PinnedScanTest extends TestBase {
+    private static final int KEYS_PER_TABLE = 1000;
+    private static final int TABLES = 3;
+
+    @Test
+    void scanOutlivesCompaction(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        for (int table = 0; table < TABLES; table++) {
+            try (DAO dao = DAOFactory.create(data)) {
+                for (int i = 0; i < KEYS_PER_TABLE; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        assertEquals(TABLES, tables(data));
+
+        try (DAO dao = DAOFactory.create(data)) {
+            final Iterator<Record> scan = dao.iterator(ByteBuffer.allocate(0));
+            final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.entrySet().iterator();
+            check(entries.next(), scan.next());
+
+            dao.compact();
+            // Merged tables are still pinned by the scan
+            assertEquals(TABLES + 1, tables(data));
+
+            while (entries.hasNext()) {
+                assertTrue(scan.hasNext());
+                check(entries.next(), scan.next());
+            }
+            assertFalse(scan.hasNext());
+            assertEquals(1, tables(data));
+        }
+    }
+
+    private static void check(final Map.Entry<ByteBuffer, ByteBuffer> expected, final Record actual) {
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getValue(), actual.getValue());
+    }
+
+    private static int tables(final File data) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".dat"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.Compression;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of SSTables read by positional reads into block cache instead of mapping.
+ */
+class PositionalReadTest extends TestBase {
+    private static final int KEYS = 10_000;
+    private static final int THREADS = 8;
+    private static final int READS = 5_000;
+
+    @Test
+    void readsBack(@TempDir File data) throws IOException {
+        readBack(data, DAOConfig.builder().readMode(DAOConfig.ReadMode.PREAD).build());
+    }
+
+    @Test
+    void readsBackCompressed(@TempDir File data) throws IOException {
+        readBack(data, DAOConfig.builder()
+                .readMode(DAOConfig.ReadMode.PREAD)
+                .compression(Compression.LZ4)
+                .build());
+    }
+
+    @Test
+    void concurrentReaders(@TempDir File data) throws Exception {
+        // Cache much smaller than data, so blocks are evicted and read again while others read them
+        final DAOConfig config = DAOConfig.builder()
+                .readMode(DAOConfig.ReadMode.PREAD)
+                .blockCacheSize(256 * 1024)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = write(data, config);
+        final List<ByteBuffer> keys = new ArrayList<>(expected.keySet());
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            final List<Future<?>> readers = new ArrayList<>(THREADS);
+            for (int i = 0; i < THREADS; i++) {
+                readers.add(executor.submit(() -> {
+                    for (int read = 0; read < READS; read++) {
+                        final ByteBuffer key = keys.get(ThreadLocalRandom.current().nextInt(keys.size()));
+                        assertEquals(expected.get(key), dao.get(key));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> reader : readers) {
+                reader.get();
+            }
+            assertTrue(dao.getBlockCache().sizeInBytes() <= dao.getBlockCache().capacityInBytes());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void readBack(final File data, final DAOConfig config) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = write(data, config);
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            check(dao, expected);
+            assertTrue(dao.getBlockCache().hitCount() > 0);
+            assertTrue(dao.getBlockCache().missCount() > 0);
+
+            // Merged tables are released and their channels closed
+            dao.compact();
+            check(dao, expected);
+        }
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> write(final File data,
+                                                              final DAOConfig config) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new ConcurrentSkipListMap<>();
+        // A few tables
+        for (int table = 0; table < 3; table++) {
+            try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+                for (int i = 0; i < KEYS / 3; i++) {
+                    final ByteBuffer key = randomKeyBuffer();
+                    final ByteBuffer value = randomBuffer(256);
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        return expected;
+    }
+
+    private static void check(final DAO dao, final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+    }
+}
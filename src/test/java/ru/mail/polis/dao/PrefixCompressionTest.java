@@ -0,0 +1,105 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of keys stored with prefixes shared with previous keys of a block.
+ */
+class PrefixCompressionTest extends TestBase {
+    private static final int PREFIX_SIZE = 100;
+    private static final int SHARED_KEYS = 1_000;
+    private static final int RANDOM_KEYS = 1_000;
+    private static final int CHAIN_LENGTH = 200;
+
+    @Test
+    void keysWithAndWithoutPrefixes(@TempDir File data) throws IOException {
+        final Random random = new Random(42);
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        // Long prefix shared by neighbours, longer than the array a key is restored into
+        final byte[] prefix = new byte[PREFIX_SIZE];
+        random.nextBytes(prefix);
+        for (int i = 0; i < SHARED_KEYS; i++) {
+            expected.put(ByteBuffer.allocate(PREFIX_SIZE + Integer.BYTES).put(prefix).putInt(i * 2).flip(),
+                    value(random));
+        }
+        // Keys which share nothing, or only by chance
+        for (int i = 0; i < RANDOM_KEYS; i++) {
+            expected.put(randomKeyBuffer(), value(random));
+        }
+        // Every key is the previous one and a byte more, so the whole previous key is shared
+        final byte[] chain = new byte[CHAIN_LENGTH];
+        random.nextBytes(chain);
+        for (int length = 1; length <= CHAIN_LENGTH; length++) {
+            expected.put(ByteBuffer.wrap(Arrays.copyOf(chain, length)), value(random));
+        }
+
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                dao.upsert(entry.getKey(), entry.getValue());
+            }
+        }
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP)) {
+            check(dao, expected);
+
+            // Absent keys share prefixes with stored ones
+            for (int i = 0; i < SHARED_KEYS; i++) {
+                final ByteBuffer key = ByteBuffer.allocate(PREFIX_SIZE + Integer.BYTES).put(prefix).putInt(i * 2 + 1);
+                assertThrows(NoSuchElementException.class, () -> dao.get(key.flip()));
+            }
+            assertThrows(NoSuchElementException.class, () -> dao.get(ByteBuffer.wrap(prefix, 0, PREFIX_SIZE - 1)));
+            final ByteBuffer longer = ByteBuffer.wrap(Arrays.copyOf(chain, CHAIN_LENGTH + 1));
+            assertThrows(NoSuchElementException.class, () -> dao.get(longer));
+        }
+    }
+
+    private static ByteBuffer value(final Random random) {
+        final byte[] value = new byte[1 + random.nextInt(64)];
+        random.nextBytes(value);
+        return ByteBuffer.wrap(value);
+    }
+
+    private static void check(final DAO dao, final NavigableMap<ByteBuffer, ByteBuffer> expected) throws IOException {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+        // Scans start at every key, and between keys, which are mostly in the middle of blocks
+        int i = 0;
+        for (final ByteBuffer key : expected.keySet()) {
+            final ByteBuffer from = i++ % 2 == 0 ? key : join(key, ByteBuffer.allocate(1));
+            final Iterator<Record> range = dao.iterator(from);
+            final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.tailMap(from, true)
+                    .entrySet().iterator();
+            for (int j = 0; j < 3 && entries.hasNext(); j++) {
+                final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+                final Record record = range.next();
+                assertEquals(entry.getKey(), record.getKey());
+                assertEquals(entry.getValue(), record.getValue());
+            }
+            assertEquals(entries.hasNext(), range.hasNext());
+        }
+        final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+        for (final ByteBuffer key : expected.keySet()) {
+            assertEquals(key, records.next().getKey());
+        }
+        assertFalse(records.hasNext());
+    }
+}
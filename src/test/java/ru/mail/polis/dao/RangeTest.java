@@ -0,0 +1,77 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Range tests over SSTables with disjoint key ranges.
+ */
+class RangeTest extends TestBase {
+    private static final int TABLES = 6;
+    private static final int KEYS_PER_TABLE = 100;
+    private static final int VALUE_SIZE = 1024 * 1024;
+
+    @Test
+    void disjointTables(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+
+        // Every table gets its own key prefix and is flushed by a few large values
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int table = 0; table < TABLES; table++) {
+                for (int i = 0; i < KEYS_PER_TABLE; i++) {
+                    final ByteBuffer key = join(prefix(table), randomKeyBuffer());
+                    final ByteBuffer value = randomValueBuffer();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+                for (int i = 0; i < 5; i++) {
+                    final ByteBuffer key = join(prefix(table), randomKeyBuffer());
+                    final ByteBuffer value = randomBuffer(VALUE_SIZE);
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int table = 0; table < TABLES; table++) {
+                checkRange(dao, expected, prefix(table), prefix(table + 1));
+                checkRange(dao, expected, prefix(table), prefix(table + 2));
+            }
+            checkRange(dao, expected, ByteBuffer.allocate(0), prefix(1));
+            checkRange(dao, expected, prefix(TABLES), prefix(TABLES + 1));
+            final ByteBuffer middle = expected.ceilingKey(prefix(2));
+            checkRange(dao, expected, middle, expected.higherKey(expected.higherKey(middle)));
+        }
+    }
+
+    private static ByteBuffer prefix(final int table) {
+        return ByteBuffer.wrap(new byte[]{(byte) table});
+    }
+
+    private static void checkRange(final DAO dao,
+                                   final NavigableMap<ByteBuffer, ByteBuffer> expected,
+                                   final ByteBuffer from,
+                                   final ByteBuffer to) throws IOException {
+        final Iterator<Record> records = dao.range(from, to);
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.subMap(from, true, to, false).entrySet()) {
+            final Record record = records.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(records.hasNext());
+    }
+}
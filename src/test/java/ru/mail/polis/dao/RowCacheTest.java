@@ -0,0 +1,109 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+import ru.mail.polis.dao.rubtsov.RowCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of cache of items read from SSTables.
+ */
+class RowCacheTest extends TestBase {
+    // Flush threshold is 16 KB, so a few dozens of values make a flush
+    private static final long SMALL_HEAP = 1024 * 1024;
+    private static final int FILLER = 64;
+    private static final DAOConfig CONFIG = DAOConfig.builder().rowCacheSize(1024 * 1024).build();
+
+    @Test
+    void writesInvalidate(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer value = randomValueBuffer();
+        try (DAO dao = new MyDAO(data, SMALL_HEAP, CONFIG)) {
+            dao.upsert(key, value);
+        }
+
+        try (MyDAO dao = new MyDAO(data, SMALL_HEAP, CONFIG)) {
+            final RowCache cache = dao.getRowCache();
+            assertEquals(value, dao.get(key));
+            assertEquals(value, dao.get(key));
+            assertEquals(1, cache.hitCount());
+
+            // Newer value goes to disk too, the cached one should not be found
+            final ByteBuffer newValue = randomValueBuffer();
+            dao.upsert(key, newValue);
+            fill(dao);
+            assertEquals(newValue, dao.get(key));
+            assertEquals(newValue, dao.get(key));
+
+            dao.remove(key);
+            fill(dao);
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    @Test
+    void hotKeysSurviveScan(@TempDir File data) throws IOException {
+        final List<ByteBuffer> cold = keys(2000);
+        final List<ByteBuffer> hot = keys(50);
+        final List<ByteBuffer> scan = keys(3000);
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, CONFIG)) {
+            for (final List<ByteBuffer> keys : List.of(cold, hot, scan)) {
+                for (final ByteBuffer key : keys) {
+                    dao.upsert(key, randomValueBuffer());
+                }
+            }
+        }
+
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, CONFIG)) {
+            final RowCache cache = dao.getRowCache();
+            read(dao, cold);
+            assertTrue(cache.sizeInBytes() <= cache.capacityInBytes());
+
+            // Keys read again are more popular than ones read once and replace them
+            for (int i = 0; i < 5; i++) {
+                read(dao, hot);
+            }
+            assertTrue(cache.evictionCount() > 0);
+
+            read(dao, scan);
+            final long hits = cache.hitCount();
+            read(dao, hot);
+            assertEquals(hot.size(), cache.hitCount() - hits);
+            assertTrue(cache.hitRatio() > 0);
+        }
+    }
+
+    private static List<ByteBuffer> keys(final int amount) {
+        final List<ByteBuffer> keys = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            keys.add(randomKeyBuffer());
+        }
+        return keys;
+    }
+
+    private static void read(final DAO dao, final List<ByteBuffer> keys) throws IOException {
+        for (final ByteBuffer key : keys) {
+            dao.get(key);
+        }
+    }
+
+    private static void fill(final DAO dao) throws IOException {
+        for (int i = 0; i < FILLER; i++) {
+            dao.upsert(randomKeyBuffer(), randomValueBuffer());
+        }
+    }
+}
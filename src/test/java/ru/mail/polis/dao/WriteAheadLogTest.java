@@ -0,0 +1,147 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of recovery of writes which were not flushed before crash.
+ */
+class WriteAheadLogTest extends TestBase {
+    private static final int KEYS = 1000;
+    private static final int WRITERS = 4;
+    private static final DAOConfig SYNCED = DAOConfig.builder()
+            .walSyncPolicy(DAOConfig.WalSyncPolicy.EVERY_WRITE)
+            .build();
+
+    @Test
+    void writesAreReplayed(@TempDir File root) throws IOException {
+        final File data = directory(root, "data");
+        final File crashed = directory(root, "crashed");
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final List<ByteBuffer> removed = new ArrayList<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, SYNCED)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                if (i % 10 == 0) {
+                    dao.remove(key);
+                    removed.add(key);
+                } else {
+                    expected.put(key, value);
+                }
+            }
+            copy(data, crashed);
+        }
+
+        check(crashed, expected, removed);
+        // Replayed writes are flushed by clean close
+        check(crashed, expected, removed);
+        assertEquals(0, segments(crashed));
+    }
+
+    @Test
+    void concurrentWritesAreReplayed(@TempDir File root) throws Exception {
+        final File data = directory(root, "data");
+        final File crashed = directory(root, "crashed");
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, SYNCED)) {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < WRITERS; writer++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < KEYS / WRITERS; i++) {
+                        final ByteBuffer key = randomKeyBuffer();
+                        final ByteBuffer value = randomValueBuffer();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> writer : writers) {
+                writer.get();
+            }
+            copy(data, crashed);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        check(crashed, expected, new ArrayList<>());
+    }
+
+    @Test
+    void tornRecordIsIgnored(@TempDir File root) throws IOException {
+        final File data = directory(root, "data");
+        final File crashed = directory(root, "crashed");
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        try (DAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, SYNCED)) {
+            for (int i = 0; i < KEYS; i++) {
+                final ByteBuffer key = randomKeyBuffer();
+                final ByteBuffer value = randomValueBuffer();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            copy(data, crashed);
+        }
+
+        // Write interrupted by crash
+        final File[] logs = crashed.listFiles((dir, name) -> name.endsWith(".wal"));
+        assertEquals(1, logs.length);
+        final ByteBuffer torn = ByteBuffer.allocate(Integer.BYTES * 3).putInt(64).putInt(42).putInt(1).flip();
+        Files.write(logs[0].toPath(), torn.array(), StandardOpenOption.APPEND);
+
+        check(crashed, expected, new ArrayList<>());
+    }
+
+    private static void check(final File data,
+                              final Map<ByteBuffer, ByteBuffer> expected,
+                              final List<ByteBuffer> removed) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            for (final ByteBuffer key : removed) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+        }
+    }
+
+    private static File directory(final File root, final String name) throws IOException {
+        return Files.createDirectory(new File(root, name).toPath()).toFile();
+    }
+
+    private static void copy(final File from, final File to) throws IOException {
+        for (final File file : from.listFiles()) {
+            Files.copy(file.toPath(), new File(to, file.getName()).toPath());
+        }
+    }
+
+    private static int segments(final File data) {
+        final File[] files = data.listFiles((dir, name) -> name.endsWith(".wal"));
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.mail.polis.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+import ru.mail.polis.dao.rubtsov.DAOConfig;
+import ru.mail.polis.dao.rubtsov.MyDAO;
+import ru.mail.polis.dao.rubtsov.WriteRejectedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of writes delayed and rejected while compaction is behind.
+ */
+class WriteStallTest extends TestBase {
+    private static final int TABLES = 2;
+    private static final int WRITES = 100;
+
+    @Test
+    void writesAreDelayed(@TempDir File data) throws IOException {
+        flushTables(data);
+        final DAOConfig config = DAOConfig.builder().writeStallLevel0Tables(TABLES - 1, TABLES + 1).build();
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            final ByteBuffer key = randomKeyBuffer();
+            for (int i = 0; i < WRITES; i++) {
+                dao.upsert(key, randomValueBuffer());
+            }
+            assertTrue(dao.getStats().getStallTimeMillis() > 0);
+            assertEquals(0, dao.getStats().getRejectedWrites());
+        }
+    }
+
+    @Test
+    void writesAreRejected(@TempDir File data) throws IOException {
+        flushTables(data);
+        final DAOConfig config = DAOConfig.builder().writeStallLevel0Tables(0, TABLES).build();
+        try (MyDAO dao = new MyDAO(data, DAOFactory.MAX_HEAP, config)) {
+            final ByteBuffer key = randomKeyBuffer();
+            final WriteRejectedException e = assertThrows(WriteRejectedException.class,
+                    () -> dao.upsert(key, randomValueBuffer()));
+            assertTrue(e.getRetryAfterSeconds() > 0);
+            assertEquals(1, dao.getStats().getRejectedWrites());
+
+            // Compaction pays the debt off
+            dao.compact();
+            dao.upsert(key, randomValueBuffer());
+        }
+    }
+
+    private static void flushTables(final File data) throws IOException {
+        for (int table = 0; table < TABLES; table++) {
+            try (DAO dao = DAOFactory.create(data)) {
+                dao.upsert(randomKeyBuffer(), randomValueBuffer());
+            }
+        }
+    }
+}
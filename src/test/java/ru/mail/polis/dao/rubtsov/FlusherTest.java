@@ -0,0 +1,158 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of flushes which fail: a table written after the failed one must not shadow its newer data.
+ */
+class FlusherTest extends TestBase {
+    // Every write is over the threshold, so every value gets a memtable of its own
+    private static final long FLUSH_THRESHOLD = 1024;
+    private static final int VALUE_SIZE = 4 * 1024;
+    private static final int FAILURES = 3;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Test
+    void failedFlushIsRetried(@TempDir File data) throws Exception {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer old = randomBuffer(VALUE_SIZE);
+        final ByteBuffer fresh = randomBuffer(VALUE_SIZE);
+        final Storage storage = new Storage(data, key, old, FAILURES, false);
+        storage.pool.upsert(key, old);
+        storage.pool.upsert(key, fresh);
+        assertTrue(storage.freshWritten.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        // The newer table is written, but waits for the older one which is being retried
+        assertEquals(0, storage.tables.size());
+        assertEquals(fresh, storage.pool.getLatest(key).getValue());
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (storage.tables.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, storage.tables.size());
+        assertEquals(FAILURES + 1, storage.oldWrites.get());
+        assertEquals(fresh, latest(storage.tables, key).getValue());
+        storage.close();
+    }
+
+    @Test
+    void failedFlushIsLeftInLog(@TempDir File data) throws Exception {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer old = randomBuffer(VALUE_SIZE);
+        final ByteBuffer fresh = randomBuffer(VALUE_SIZE);
+        final Storage storage = new Storage(data, key, old, Integer.MAX_VALUE, false);
+        storage.pool.upsert(key, old);
+        storage.pool.upsert(key, fresh);
+        assertTrue(storage.freshWritten.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        storage.close();
+
+        // Neither table is installed, both values are replayed from logs and the newer one wins
+        final TableSet tables = new TableLoader(storage.factory, data).load();
+        assertEquals(0, tables.size());
+        final MemTablePool pool = new MemTablePool(FLUSH_THRESHOLD, data.toPath(), DAOConfig.defaults(),
+                new RowCache(0));
+        assertEquals(fresh, pool.getLatest(key).getValue());
+        pool.close();
+        tables.close();
+    }
+
+    @Test
+    void leftLogHaltsInstallation(@TempDir File data) throws Exception {
+        final ByteBuffer key = randomKeyBuffer();
+        final ByteBuffer old = randomBuffer(VALUE_SIZE);
+        final ByteBuffer fresh = randomBuffer(VALUE_SIZE);
+        final Storage storage = new Storage(data, key, old, 0, true);
+        storage.pool.upsert(key, old);
+        storage.pool.upsert(key, fresh);
+        assertTrue(storage.freshWritten.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        storage.close();
+
+        // The old table is installed, but its log is replayed, so the newer table stays in its log too
+        final TableSet tables = new TableLoader(storage.factory, data).load();
+        assertEquals(1, tables.size());
+        assertEquals(old, latest(tables, key).getValue());
+        final MemTablePool pool = new MemTablePool(FLUSH_THRESHOLD, data.toPath(), DAOConfig.defaults(),
+                new RowCache(0));
+        assertEquals(fresh, pool.getLatest(key).getValue());
+        pool.close();
+        tables.close();
+    }
+
+    private static Item latest(final TableSet tables, final ByteBuffer key) {
+        Item latest = null;
+        for (final SSTable table : tables.snapshot()) {
+            final Item item = table.getLatest(key);
+            if (item != null && (latest == null || item.getTimeStamp() > latest.getTimeStamp())) {
+                latest = item;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Pool and tables with a flusher which fails to write the table holding the old value given times,
+     * the pool may fail to delete the log of that table.
+     */
+    private static final class Storage {
+        final TableFactory factory;
+        final TableSet tables;
+        final MemTablePool pool;
+        final Flusher flusher;
+        final AtomicInteger oldWrites = new AtomicInteger();
+        final CountDownLatch freshWritten = new CountDownLatch(1);
+
+        Storage(final File data,
+                final ByteBuffer key,
+                final ByteBuffer old,
+                final int failures,
+                final boolean keepOldLog) throws IOException {
+            final DAOConfig config = DAOConfig.defaults();
+            factory = new TableFactory(data, config, new BlockCache(0), new IoRateLimiter(0));
+            tables = new TableLoader(factory, data).load();
+            pool = new MemTablePool(FLUSH_THRESHOLD, data.toPath(), config, new RowCache(0)) {
+                @Override
+                void flushed(final long generation) throws IOException {
+                    // The old value is the first write, so it is in the table of the first generation
+                    if (keepOldLog && generation == 0) {
+                        throw new IOException("Injected delete failure");
+                    }
+                    super.flushed(generation);
+                }
+            };
+            flusher = new Flusher(pool, tables, table -> {
+                final Item item = table.getLatest(key);
+                final boolean isOld = item != null && old.equals(item.getValue());
+                if (isOld && oldWrites.getAndIncrement() < failures) {
+                    throw new IOException("Injected failure");
+                }
+                final SSTable written = factory.write(TableCursors.items(table.cursor(ByteBuffer.allocate(0))),
+                        table.getUniqueID());
+                if (item != null && !isOld) {
+                    freshWritten.countDown();
+                }
+                return written;
+            }, () -> {
+            }, 2);
+            flusher.start();
+        }
+
+        void close() throws IOException, InterruptedException {
+            pool.close();
+            flusher.join();
+            tables.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.TestBase;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests of arenas of off-heap memtables, which chunks are reused by later tables once flushed tables are released.
+ */
+class MemoryArenaTest extends TestBase {
+    // Chunks are 1 MB, items of a table take a few of them
+    private static final long FLUSH_THRESHOLD = 16 * 1024 * 1024;
+    private static final int KEYS = 20_000;
+    private static final int VALUE_SIZE = 100;
+    private static final int TABLES = 20;
+
+    @Test
+    void chunksAreReused() {
+        final MemoryArena.ChunkPool pool = new MemoryArena.ChunkPool(FLUSH_THRESHOLD);
+        long allocated = 0;
+        for (int generation = 0; generation < TABLES; generation++) {
+            final MemTable table = new MemTable(generation, new MemoryArena(pool));
+            fill(table);
+            table.release();
+            if (generation == 0) {
+                allocated = pool.allocatedBytes();
+            }
+        }
+        // Later tables take chunks of released ones instead of allocating
+        assertEquals(allocated, pool.allocatedBytes());
+    }
+
+    @Test
+    void readItemsOutliveArena() {
+        final MemoryArena.ChunkPool pool = new MemoryArena.ChunkPool(FLUSH_THRESHOLD);
+        final MemTable table = new MemTable(0, new MemoryArena(pool));
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(table);
+        final Map.Entry<ByteBuffer, ByteBuffer> first = expected.firstEntry();
+        final Item point = table.getLatest(first.getKey());
+        assertNotNull(point);
+        final Iterator<Item> items = table.iterator(ByteBuffer.allocate(0));
+        final Item scanned = items.next();
+
+        // The scan pins the arena, so its chunks are not reused yet
+        table.release();
+        final long allocated = pool.allocatedBytes();
+        final MemTable next = new MemTable(1, new MemoryArena(pool));
+        fill(next);
+        assertEquals(2 * allocated, pool.allocatedBytes());
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.tailMap(first.getKey(), false).entrySet()) {
+            final Item item = items.next();
+            assertEquals(entry.getKey(), item.getKey());
+            assertEquals(entry.getValue(), item.getValue());
+        }
+        assertFalse(items.hasNext());
+
+        // Chunks of the exhausted scan are reused, items read before keep their contents
+        next.release();
+        final MemTable last = new MemTable(2, new MemoryArena(pool));
+        fill(last);
+        fill(last);
+        assertEquals(2 * allocated, pool.allocatedBytes());
+        assertEquals(first.getKey(), point.getKey());
+        assertEquals(first.getValue(), point.getValue());
+        assertEquals(first.getKey(), scanned.getKey());
+        assertEquals(first.getValue(), scanned.getValue());
+    }
+
+    @Test
+    void releasedTableIsEmpty() {
+        final MemoryArena.ChunkPool pool = new MemoryArena.ChunkPool(FLUSH_THRESHOLD);
+        final MemTable table = new MemTable(0, new MemoryArena(pool));
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(table);
+        table.release();
+        // Readers which come after release find items in SSTables the table was flushed to
+        assertNull(table.getLatest(expected.firstKey()));
+        assertFalse(table.iterator(ByteBuffer.allocate(0)).hasNext());
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> fill(final MemTable table) {
+        final NavigableMap<ByteBuffer, ByteBuffer> items = new TreeMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            final ByteBuffer key = randomKeyBuffer();
+            final ByteBuffer value = randomBuffer(VALUE_SIZE);
+            table.upsert(key, value);
+            items.put(key, value);
+        }
+        return items;
+    }
+}
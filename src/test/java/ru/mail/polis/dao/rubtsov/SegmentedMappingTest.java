@@ -0,0 +1,104 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests of SSTables mapped by segments much smaller than blocks, so records and blocks cross segment boundaries.
+ */
+class SegmentedMappingTest extends TestBase {
+    private static final int KEYS = 2_000;
+    private static final int LARGE_VALUE_SIZE = 10_000;
+    private static final long[] SEGMENT_SIZES = {1_000, 4_093};
+
+    @Test
+    void regionsCrossBoundaries(@TempDir File data) throws IOException {
+        final Path path = data.toPath().resolve("segmented.dat");
+        final byte[] bytes = new byte[10 * 4_093 + 17];
+        new Random(42).nextBytes(bytes);
+        Files.write(path, bytes);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (final long segmentSize : SEGMENT_SIZES) {
+                final MappedFile file = MappedFile.map(channel, segmentSize);
+                assertEquals(bytes.length, file.size());
+                for (long position = 0; position < bytes.length; position += 997) {
+                    // Within a segment, up to its end, across one boundary and across many of them
+                    for (final long length : new long[]{1, segmentSize - position % segmentSize, 2_000, 9_000}) {
+                        final long limit = Math.min(bytes.length, position + length);
+                        assertEquals(ByteBuffer.wrap(bytes, (int) position, (int) (limit - position)),
+                                file.region(position, limit));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void itemsCrossBoundaries(@TempDir File data) throws IOException {
+        final List<Item> items = items();
+        final File table = SSTable.writeNewTable(items.iterator(), data, "segmented", DAOConfig.defaults()).toFile();
+        for (final long segmentSize : SEGMENT_SIZES) {
+            final TableReader reader = TableContents.map(table, new BlockCache(0), segmentSize).getReader();
+            for (final Item item : items) {
+                final Item read = reader.get(item.getKey());
+                assertNotNull(read);
+                check(item, read);
+            }
+            assertNull(reader.get(ByteBuffer.allocate(0)));
+
+            final Iterator<Item> iterator = reader.iterator(ByteBuffer.allocate(0));
+            for (final Item item : items) {
+                check(item, iterator.next());
+            }
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    /**
+     * Small records share blocks, large values take blocks of their own, every tenth key is removed.
+     */
+    private static List<Item> items() {
+        final Random random = new Random(42);
+        final TreeMap<ByteBuffer, Item> items = new TreeMap<>();
+        while (items.size() < KEYS) {
+            final ByteBuffer key = randomKeyBuffer();
+            final Item item;
+            if (items.size() % 10 == 0) {
+                item = Item.removed(key);
+            } else {
+                final int size = items.size() % 50 == 1 ? LARGE_VALUE_SIZE : 1 + random.nextInt(300);
+                item = Item.of(key, randomBuffer(size));
+            }
+            items.put(key, item);
+        }
+        return new ArrayList<>(items.values());
+    }
+
+    private static void check(final Item expected, final Item actual) {
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getTimeStamp(), actual.getTimeStamp());
+        assertEquals(expected.isRemoved(), actual.isRemoved());
+        if (!expected.isRemoved()) {
+            assertEquals(expected.getValue(), actual.getValue());
+        }
+    }
+}
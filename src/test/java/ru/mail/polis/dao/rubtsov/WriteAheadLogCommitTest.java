@@ -0,0 +1,193 @@
+package ru.mail.polis.dao.rubtsov;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of commits which fail to write or sync records: no commit returns before its record is written.
+ */
+class WriteAheadLogCommitTest extends TestBase {
+    private static final int RECORDS = 10;
+
+    @Test
+    void failedWriteIsRepeated(@TempDir File data) throws IOException {
+        check(data, false, Failure.WRITE);
+    }
+
+    @Test
+    void partialWriteIsRepeated(@TempDir File data) throws IOException {
+        check(data, false, Failure.PARTIAL_WRITE);
+    }
+
+    @Test
+    void failedSyncIsRepeated(@TempDir File data) throws IOException {
+        check(data, true, Failure.FORCE);
+    }
+
+    private static void check(final File data, final boolean force, final Failure failure) throws IOException {
+        final Path path = data.toPath().resolve("failing" + WriteAheadLog.EXTENSION);
+        final FailingChannel channel = new FailingChannel(
+                FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW));
+        final List<Item> items = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(path, channel, force)) {
+            final long[] sequences = new long[RECORDS];
+            for (int i = 0; i < RECORDS; i++) {
+                final Item item = Item.of(randomKeyBuffer(), randomValueBuffer(), i + 1);
+                items.add(item);
+                sequences[i] = log.append(item);
+            }
+            // The first writer of the batch fails, the last one commits the records of both
+            channel.failure = failure;
+            assertThrows(IOException.class, () -> log.commit(sequences[0]));
+            log.commit(sequences[RECORDS - 1]);
+        }
+
+        final List<Item> replayed = WriteAheadLog.replay(path);
+        assertEquals(items.size(), replayed.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getKey(), replayed.get(i).getKey());
+            assertEquals(items.get(i).getValue(), replayed.get(i).getValue());
+            assertEquals(items.get(i).getTimeStamp(), replayed.get(i).getTimeStamp());
+        }
+    }
+
+    private enum Failure {
+        NONE, WRITE, PARTIAL_WRITE, FORCE
+    }
+
+    /**
+     * Channel which fails the next write or sync once.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel channel;
+        private Failure failure = Failure.NONE;
+
+        FailingChannel(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long write(final ByteBuffer[] srcs, final int offset, final int length) throws IOException {
+            if (failure == Failure.WRITE) {
+                failure = Failure.NONE;
+                throw new IOException("Injected write failure");
+            }
+            if (failure == Failure.PARTIAL_WRITE) {
+                failure = Failure.NONE;
+                // Bytes reach the file, but the caller learns nothing about them
+                final ByteBuffer part = srcs[offset].duplicate();
+                part.limit(part.position() + part.remaining() / 2);
+                channel.write(part);
+                throw new IOException("Injected partial write failure");
+            }
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public void force(final boolean metaData) throws IOException {
+            if (failure == Failure.FORCE) {
+                failure = Failure.NONE;
+                throw new IOException("Injected sync failure");
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(final ByteBuffer[] dsts, final int offset, final int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(final long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(final long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(final long position,
+                               final long count,
+                               final WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(final ReadableByteChannel src,
+                                 final long position,
+                                 final long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst, final long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(final ByteBuffer src, final long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(final MapMode mode, final long position, final long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(final long position, final long size, final boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(final long position, final long size, final boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}